@@ -9,5 +9,14 @@ public interface PacketHandler {
 
     void onACKNotification(ACKNotification notification);
 
+    /**
+     * Called for every data packet received
+     *
+     * The packet is released once this returns, call {@link EncapsulatedPacket#retain()} to keep it and release it later
+     *
+     * @param session Session the packet belongs to
+     * @param packet Packet received
+     * @param flags Flags
+     */
     void onEncapsulated(Session session, EncapsulatedPacket packet, int flags);
 }
@@ -32,6 +32,20 @@ abstract public class RakLibServerInstance {
         return this.getSessionManager().addInterface(address);
     }
 
+    /**
+     * Add a interface sharded over several sockets bound with SO_REUSEPORT
+     *
+     * @param address The address binding on
+     * @param shards Number of sockets and interface threads
+     * @throws SocketException
+     * @throws InterfaceOutOfPoolSizeException
+     *
+     * @return The shards of the new interface
+     */
+    protected RakLibInterface[] addInterface(InetSocketAddress address, int shards) throws SocketException, InterfaceOutOfPoolSizeException {
+        return this.getSessionManager().addInterface(address, shards);
+    }
+
     /**
      * Get the root network manager
      *
@@ -1,12 +1,16 @@
 package com.supermarcus.jraklib;
 
 import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.lang.ActorInbox;
+import com.supermarcus.jraklib.lang.SerialExecutor;
 import com.supermarcus.jraklib.lang.message.session.SessionCloseMessage;
 import com.supermarcus.jraklib.lang.message.session.SessionCreateMessage;
 import com.supermarcus.jraklib.lang.message.session.SessionOpenMessage;
 import com.supermarcus.jraklib.network.RakLibInterface;
 import com.supermarcus.jraklib.network.ReliableManager;
 import com.supermarcus.jraklib.network.SendPriority;
+import com.supermarcus.jraklib.network.SessionActorPool;
+import com.supermarcus.jraklib.network.TimerWheel;
 import com.supermarcus.jraklib.protocol.Packet;
 import com.supermarcus.jraklib.protocol.raklib.*;
 import com.supermarcus.jraklib.protocol.raklib.acknowledge.AcknowledgePacket;
@@ -15,6 +19,7 @@ import com.supermarcus.jraklib.protocol.raklib.data.DataPacket;
 import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
 import java.util.HashSet;
+import java.util.concurrent.Executor;
 
 public class Session {
     public static final long UPDATE_TIMEOUT = 10 * 1000;
@@ -41,6 +46,14 @@ public class Session {
 
     private ReliableManager reliableManager;
 
+    private SerialExecutor handlerInbox = null;
+
+    private ActorInbox<Object> actorInbox = null;
+
+    private long timerDeadline = TimerWheel.NONE;
+
+    volatile private boolean wakeupQueued = false;
+
     public Session(SessionManager manager, InetSocketAddress address, RakLibInterface ownedInterface){
         this.address = address;
         this.manager = manager;
@@ -57,66 +70,27 @@ public class Session {
         return this.ownedInterface.get();
     }
 
+    /**
+     * Route a received packet, the session takes over the reference held by the caller
+     *
+     * @param packet Packet received
+     */
     public void handleEncapsulatedPacketRoute(EncapsulatedPacket packet){
         if(packet.hasSplit()){
             if(this.state == State.CONNECTED){
                 this.getReliableManager().onSplit(packet);
+            }else{
+                packet.release();
             }
             return;
         }
 
-        int id = packet.getBuffer()[0] & 0xff;
+        int id = packet.getPacketId() & 0xff;
         if(id < 0x80){
-            PacketInfo info = PacketInfo.getById(packet.getBuffer()[0]);
-            if(info != null){
-                if(this.state == State.CONNECTING_2){
-                    EncapsulatedPacket reply;
-                    switch (info){
-                        case CLIENT_CONNECT_DataPacket:
-                            CLIENT_CONNECT_DataPacket connectPacket = (CLIENT_CONNECT_DataPacket) info.wrap(packet.getBuffer());
-                            connectPacket.decode();
-
-                            SERVER_HANDSHAKE_DataPacket replyHandshake = new SERVER_HANDSHAKE_DataPacket();
-                            replyHandshake.setAddress(this.getAddress());
-                            replyHandshake.setSendPing(connectPacket.getSendPing() + 1000L);
-                            replyHandshake.encode();
-
-                            reply = new EncapsulatedPacket();
-                            reply.setReliability(EncapsulatedPacket.UNRELIABLE);
-                            reply.setBuffer(replyHandshake);
-
-                            this.getReliableManager().addToQueue(reply, SendPriority.IMMEDIATE);
-                            break;
-                        case CLIENT_HANDSHAKE_DataPacket:
-                            CLIENT_HANDSHAKE_DataPacket handshake = (CLIENT_HANDSHAKE_DataPacket) info.wrap(packet.getBuffer());
-                            handshake.decode();
-
-                            if(handshake.getAddress().getPort() == this.getAddress().getPort() || !this.manager.isPortChecking()){
-                                this.state = State.CONNECTED;
-                                this.manager.queueMessage(new SessionOpenMessage(this));
-                                for(EncapsulatedPacket preEncapsulated : this.prejoinQueue){
-                                    this.manager.queueEncapsulated(this, preEncapsulated);
-                                }
-                                this.prejoinQueue.clear();
-                            }
-                            break;
-                    }
-                }else if (info == PacketInfo.CLIENT_DISCONNECT_DataPacket){
-                    this.close(SessionCloseMessage.Reason.CLIENT_DISCONNECT);
-                }else if (info == PacketInfo.PING_DataPacket){
-                    PING_DataPacket ping = (PING_DataPacket) info.wrap(packet.getBuffer());
-                    ping.decode();
-
-                    PONG_DataPacket pong = new PONG_DataPacket();
-                    pong.setPingID(ping.getPingID());
-                    pong.encode();
-
-                    EncapsulatedPacket reply = new EncapsulatedPacket();
-                    reply.setReliability(EncapsulatedPacket.UNRELIABLE);
-                    reply.setBuffer(pong);
-
-                    this.getReliableManager().addToQueue(reply, SendPriority.NORMAL);
-                }
+            try{
+                this.handleControlPacket(packet);
+            }finally{
+                packet.release();
             }
         }else if(this.state == State.CONNECTED){
             this.manager.queueEncapsulated(this, packet);
@@ -125,6 +99,60 @@ public class Session {
         }
     }
 
+    private void handleControlPacket(EncapsulatedPacket packet){
+        PacketInfo info = PacketInfo.getById(packet.getPacketId());
+        if(info != null){
+            if(this.state == State.CONNECTING_2){
+                EncapsulatedPacket reply;
+                switch (info){
+                    case CLIENT_CONNECT_DataPacket:
+                        CLIENT_CONNECT_DataPacket connectPacket = (CLIENT_CONNECT_DataPacket) info.wrap(packet.getPayload());
+                        connectPacket.decode();
+
+                        SERVER_HANDSHAKE_DataPacket replyHandshake = new SERVER_HANDSHAKE_DataPacket();
+                        replyHandshake.setAddress(this.getAddress());
+                        replyHandshake.setSendPing(connectPacket.getSendPing() + 1000L);
+                        replyHandshake.encode();
+
+                        reply = new EncapsulatedPacket();
+                        reply.setReliability(EncapsulatedPacket.UNRELIABLE);
+                        reply.setBuffer(replyHandshake);
+
+                        this.getReliableManager().addToQueue(reply, SendPriority.IMMEDIATE);
+                        break;
+                    case CLIENT_HANDSHAKE_DataPacket:
+                        CLIENT_HANDSHAKE_DataPacket handshake = (CLIENT_HANDSHAKE_DataPacket) info.wrap(packet.getPayload());
+                        handshake.decode();
+
+                        if(handshake.getAddress().getPort() == this.getAddress().getPort() || !this.manager.isPortChecking()){
+                            this.state = State.CONNECTED;
+                            this.manager.queueMessage(new SessionOpenMessage(this));
+                            for(EncapsulatedPacket preEncapsulated : this.prejoinQueue){
+                                this.manager.queueEncapsulated(this, preEncapsulated);
+                            }
+                            this.prejoinQueue.clear();
+                        }
+                        break;
+                }
+            }else if (info == PacketInfo.CLIENT_DISCONNECT_DataPacket){
+                this.close(SessionCloseMessage.Reason.CLIENT_DISCONNECT);
+            }else if (info == PacketInfo.PING_DataPacket){
+                PING_DataPacket ping = (PING_DataPacket) info.wrap(packet.getPayload());
+                ping.decode();
+
+                PONG_DataPacket pong = new PONG_DataPacket();
+                pong.setPingID(ping.getPingID());
+                pong.encode();
+
+                EncapsulatedPacket reply = new EncapsulatedPacket();
+                reply.setReliability(EncapsulatedPacket.UNRELIABLE);
+                reply.setBuffer(pong);
+
+                this.getReliableManager().addToQueue(reply, SendPriority.NORMAL);
+            }
+        }
+    }
+
     public void handlePacket(Packet packet){
         this.isActive = true;
         this.lastUpdate = System.currentTimeMillis();
@@ -134,6 +162,8 @@ public class Session {
             }else if(packet instanceof AcknowledgePacket){
                 this.getReliableManager().onAcknowledgement((AcknowledgePacket) packet);
             }
+        }else if(packet instanceof DataPacket){
+            ((DataPacket) packet).releasePackets();
         }
 
         if(packet.getNetworkID() > 0x00){
@@ -145,7 +175,7 @@ public class Session {
                 this.state = State.CONNECTING_1;
             }else if(this.state == State.CONNECTING_1 && packet instanceof OPEN_CONNECTION_REQUEST_2){
                 this.clientID = ((OPEN_CONNECTION_REQUEST_2) packet).getClientID();
-                if((((OPEN_CONNECTION_REQUEST_2) packet).getServerAddress().getPort() == this.getOwnedInterface().getSocket().getPort()) || !this.manager.isPortChecking()){
+                if((((OPEN_CONNECTION_REQUEST_2) packet).getServerAddress().getPort() == this.getOwnedInterface().getSocket().getLocalPort()) || !this.manager.isPortChecking()){
                     this.setMtuSize(Math.min(Math.abs(((OPEN_CONNECTION_REQUEST_2) packet).getMtuSize()), Session.MAX_MTU_SIZE));
                     OPEN_CONNECTION_REPLY_2 reply = new OPEN_CONNECTION_REPLY_2();
                     reply.setMtuSize(this.getMtuSize());
@@ -183,6 +213,46 @@ public class Session {
         }//TODO: Add a message or something?
     }
 
+    /**
+     * @param millis Current time
+     * @return Time the session has to be updated at next, covering its timeout and the timers of its reliable manager
+     */
+    public long getNextDeadline(long millis){
+        return Math.min(this.lastUpdate + Session.UPDATE_TIMEOUT + 1, this.getReliableManager().getNextDeadline(millis));
+    }
+
+    /**
+     * @return Deadline the session is registered at in the timer wheel of its interface, TimerWheel.NONE if it is not
+     */
+    public long getTimerDeadline(){
+        return this.timerDeadline;
+    }
+
+    public void setTimerDeadline(long timerDeadline){
+        this.timerDeadline = timerDeadline;
+    }
+
+    public boolean isWakeupQueued(){
+        return this.wakeupQueued;
+    }
+
+    public void setWakeupQueued(boolean wakeupQueued){
+        this.wakeupQueued = wakeupQueued;
+    }
+
+    /**
+     * Send pending ACKs and queued packets at once, used after the session received datagrams
+     *
+     * @param millis Current time
+     */
+    public void flush(long millis){
+        try{
+            this.getReliableManager().onUpdate(millis);
+        }catch (Exception e){
+            e.printStackTrace();//TODO
+        }
+    }
+
     public void close(){
         this.manager.getSessionMap().removeSession(this.getAddress());
     }
@@ -215,6 +285,48 @@ public class Session {
 
     public void setMtuSize(int mtuSize) {
         this.mtuSize = mtuSize;
+        this.getReliableManager().setMtuSize(mtuSize);
+    }
+
+    /**
+     * @return Pacing rate in bytes per second, or -1 if the session is not paced
+     */
+    public long getPacingRate(){
+        return this.getReliableManager().getPacingRate();
+    }
+
+    /**
+     * @return Congestion window in bytes, or -1 if the session has no congestion controller
+     */
+    public long getCongestionWindow(){
+        return this.getReliableManager().getCongestionWindow();
+    }
+
+    /**
+     * @return Bytes sent and not acknowledged yet
+     */
+    public long getBytesInFlight(){
+        return this.getReliableManager().getBytesInFlight();
+    }
+
+    /**
+     * Get the queue running the handler calls of this session in order
+     *
+     * @param executor Executor the calls run on
+     * @return Inbox of the session
+     */
+    synchronized SerialExecutor getHandlerInbox(Executor executor){
+        if((this.handlerInbox == null) || (this.handlerInbox.getExecutor() != executor)){
+            this.handlerInbox = new SerialExecutor(executor);
+        }
+        return this.handlerInbox;
+    }
+
+    synchronized ActorInbox<Object> getActorInbox(SessionActorPool pool){
+        if((this.actorInbox == null) || (this.actorInbox.getExecutor() != pool)){
+            this.actorInbox = pool.newInbox();
+        }
+        return this.actorInbox;
     }
 
     public ReliableManager getReliableManager() {
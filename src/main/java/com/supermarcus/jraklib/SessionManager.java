@@ -1,42 +1,116 @@
 package com.supermarcus.jraklib;
 
 import com.supermarcus.jraklib.lang.ACKNotification;
+import com.supermarcus.jraklib.lang.BoundedQueue;
+import com.supermarcus.jraklib.lang.HandlerThreads;
+import com.supermarcus.jraklib.lang.OverflowPolicy;
 import com.supermarcus.jraklib.lang.QueuedEncapsulated;
 import com.supermarcus.jraklib.lang.exceptions.InterfaceOutOfPoolSizeException;
 import com.supermarcus.jraklib.lang.message.RakLibMessage;
 import com.supermarcus.jraklib.lang.message.major.MainThreadExceptionMessage;
+import com.supermarcus.jraklib.lang.message.major.MessagePoolOverflowMessage;
 import com.supermarcus.jraklib.lang.message.major.UncaughtMainThreadExceptionMessage;
 import com.supermarcus.jraklib.network.NetworkManager;
 import com.supermarcus.jraklib.network.RakLibInterface;
+import com.supermarcus.jraklib.network.ReceiveSignal;
 import com.supermarcus.jraklib.lang.RawPacket;
 import com.supermarcus.jraklib.network.SendPriority;
+import com.supermarcus.jraklib.network.SessionActorPool;
+import com.supermarcus.jraklib.network.SessionUpdatePool;
+import com.supermarcus.jraklib.network.ShardGroup;
+import com.supermarcus.jraklib.network.TransportFactory;
+import com.supermarcus.jraklib.network.congestion.CongestionControllerFactory;
 import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
 
 import java.net.InetSocketAddress;
 import java.net.SocketException;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class SessionManager extends Thread {
     public static final int MAX_SERVER_INTERFACES = 25;
 
+    /**
+     * Period of the network statistics update run by the main thread
+     */
+    public static final long NETWORK_UPDATE_PERIOD = RakLibInterface.NORMAL_TICK;
+
+    /**
+     * Default capacity of each event queue
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+
+    /**
+     * Events taken from a queue before the main thread moves on to the next one
+     */
+    public static final int DISPATCH_BATCH_SIZE = 1024;
+
     private ReentrantLock threadLock = new ReentrantLock(true);
 
-    private boolean isShutdown = false;
+    volatile private boolean isShutdown = false;
+
+    private ReceiveSignal signal = new ReceiveSignal();
+
+    volatile private Thread dispatcherThread = null;
+
+    volatile private BoundedQueue<RakLibMessage> messages = SessionManager.newQueue(EventQueue.MESSAGES, SessionManager.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST);
 
-    private ConcurrentLinkedQueue<RakLibMessage> messages = new ConcurrentLinkedQueue<>();
+    volatile private BoundedQueue<RawPacket> rawPackets = SessionManager.newQueue(EventQueue.RAW_PACKETS, SessionManager.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST);
 
-    private ConcurrentLinkedQueue<RawPacket> rawPackets = new ConcurrentLinkedQueue<>();
+    volatile private BoundedQueue<ACKNotification> ackNotifications = SessionManager.newQueue(EventQueue.ACK_NOTIFICATIONS, SessionManager.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST);
 
-    private ConcurrentLinkedQueue<ACKNotification> ackNotifications = new ConcurrentLinkedQueue<>();
+    volatile private BoundedQueue<QueuedEncapsulated> encapsulatedQueue = SessionManager.newQueue(EventQueue.ENCAPSULATED, SessionManager.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST);
 
-    private ConcurrentLinkedQueue<QueuedEncapsulated> encapsulatedQueue = new ConcurrentLinkedQueue<>();
+    private final Consumer<RakLibMessage> messageConsumer = message -> {
+        try{
+            this.fireMessage(message);
+        }catch (Exception ignore){}
+    };
+
+    private final Consumer<RawPacket> rawConsumer = raw -> {
+        ExecutorService executor = this.handlerExecutor;
+        if(executor != null){
+            this.dispatch(executor, () -> this.handleRawPacket(raw));
+        }else{
+            this.handleRawPacket(raw);
+        }
+    };
+
+    private final Consumer<ACKNotification> ackConsumer = n -> {
+        ExecutorService executor = this.handlerExecutor;
+        if(executor != null){
+            n.getSession().getHandlerInbox(executor).execute(() -> this.handleACKNotification(n));
+        }else{
+            this.handleACKNotification(n);
+        }
+    };
+
+    private final Consumer<Object> actorConsumer = event -> {
+        if(event instanceof QueuedEncapsulated){
+            this.handleEncapsulated((QueuedEncapsulated) event);
+        }else if(event instanceof ACKNotification){
+            this.handleACKNotification((ACKNotification) event);
+        }
+    };
+
+    private final Consumer<QueuedEncapsulated> encapsulatedConsumer = e -> {
+        ExecutorService executor = this.handlerExecutor;
+        if(executor != null){
+            e.getSession().getHandlerInbox(executor).execute(() -> this.handleEncapsulated(e));
+        }else{
+            this.handleEncapsulated(e);
+        }
+    };
 
     private int runningServer = 0;
 
@@ -56,6 +130,32 @@ public class SessionManager extends Thread {
 
     volatile private boolean customThreads;
 
+    volatile private boolean channelTransport = false;
+
+    volatile private boolean directReceiveBuffers = false;
+
+    volatile private boolean pooledPayloads = false;
+
+    volatile private TransportFactory transportFactory = null;
+
+    volatile private boolean eventDriven = false;
+
+    volatile private boolean sendPacing = false;
+
+    volatile private long dispatcherSpinNanos = 0L;
+
+    volatile private boolean timerWheel = false;
+
+    volatile private CongestionControllerFactory congestionControl = null;
+
+    volatile private SessionUpdatePool updatePool = null;
+
+    volatile private ExecutorService handlerExecutor = null;
+
+    volatile private SessionActorPool actorPool = null;
+
+    volatile private int sessionInboxCapacity = SessionActorPool.DEFAULT_INBOX_CAPACITY;
+
     volatile private String displayName = "Minecraft Server";
 
     volatile private int peProtocol = 27;
@@ -85,22 +185,50 @@ public class SessionManager extends Thread {
         return this.customThreads;
     }
 
+    /**
+     * Dispatch loop
+     *
+     * - Parks while every queue is empty, producers wake it up when they queue something
+     * - With dispatcher spinning enabled it spins first, for up to a time which doubles when work arrives while spinning and halves when it does not
+     * - A queue still holding events after a full batch is drained again without waiting
+     */
     public void run(){
-        long ticks = 0;
+        final long networkNanos = SessionManager.NETWORK_UPDATE_PERIOD * 1000 * 1000L;
+        long nextNetworkUpdate = System.nanoTime();
+        long spinNanos = 0L;
         while(!this.isShutdown()){
             try{
-                ++ticks;
-                if((ticks % 50) == 0){
+                long now = System.nanoTime();
+                if((now - nextNetworkUpdate) >= 0){
                     this.getNetworkManager().doUpdate(System.currentTimeMillis());
+                    nextNetworkUpdate = now + networkNanos;
+                }
+                if(!this.isCustomThreads() && this.update()){
+                    continue;
                 }
-                if(!this.isCustomThreads()){
-                    this.update();
+
+                long maxSpin = this.dispatcherSpinNanos;
+                if(maxSpin > 0){
+                    spinNanos = Math.max(maxSpin / 16, Math.min(spinNanos, maxSpin));
+                    if(this.signal.spin(spinNanos)){
+                        spinNanos = Math.min(maxSpin, spinNanos * 2);
+                        continue;
+                    }
+                    spinNanos /= 2;
                 }
+                this.signal.await(nextNetworkUpdate - System.nanoTime());
             }catch (Throwable t){
                 this.queueMessage(new MainThreadExceptionMessage(this, t));
             }
         }
+        this.setUpdateWorkers(0);
+        this.setVirtualThreadDispatch(false);
+        this.setActorThreads(0);
         synchronized (this){
+            this.messages.close();
+            this.rawPackets.close();
+            this.ackNotifications.close();
+            this.encapsulatedQueue.close();
             for(RakLibInterface i : this.getInterfaces()){
                 i.shutdown();
                 try{
@@ -114,7 +242,12 @@ public class SessionManager extends Thread {
     }
 
     public void notifyACK(Session session, Integer identifier){
-        this.ackNotifications.add(new ACKNotification(session, identifier));
+        SessionActorPool pool = this.actorPool;
+        if(pool != null){
+            pool.offer(session.getActorInbox(pool), new ACKNotification(session, identifier));
+            return;
+        }
+        this.offer(this.ackNotifications, new ACKNotification(session, identifier));
     }
 
     public SessionMap getSessionMap(){
@@ -147,62 +280,79 @@ public class SessionManager extends Thread {
         this.update();
     }
 
-    private void update(){
+    /**
+     * Dispatch queued events, at most a batch of each queue
+     *
+     * @return Whether a queue may still hold events
+     */
+    private boolean update(){
+        this.dispatcherThread = Thread.currentThread();
+        boolean more = false;
         try{
-            this.processMessages();
-            this.processRawPacket();
-            this.processACKNotification();
-            this.processEncapsulated();
+            this.reportOverflows();
+            more |= this.messages.drain(this.messageConsumer, SessionManager.DISPATCH_BATCH_SIZE) == SessionManager.DISPATCH_BATCH_SIZE;
+            more |= this.rawPackets.drain(this.rawConsumer, SessionManager.DISPATCH_BATCH_SIZE) == SessionManager.DISPATCH_BATCH_SIZE;
+            more |= this.ackNotifications.drain(this.ackConsumer, SessionManager.DISPATCH_BATCH_SIZE) == SessionManager.DISPATCH_BATCH_SIZE;
+            more |= this.encapsulatedQueue.drain(this.encapsulatedConsumer, SessionManager.DISPATCH_BATCH_SIZE) == SessionManager.DISPATCH_BATCH_SIZE;
         }catch (Throwable t){
             this.queueMessage(new MainThreadExceptionMessage(this, t));
         }
+        return more;
     }
 
-    private void processMessages(){
-        RakLibMessage message = messages.poll();
-        while(message != null){
-            try{
-                this.fireMessage(message);
-            }catch (Exception ignore){}
-            message = messages.poll();
+    private void reportOverflows(){
+        for(BoundedQueue<?> queue : new BoundedQueue<?>[]{this.messages, this.rawPackets, this.ackNotifications, this.encapsulatedQueue}){
+            long overflows = queue.takeOverflows();
+            if(overflows > 0){
+                try{
+                    this.fireMessage(new MessagePoolOverflowMessage(queue.getName(), queue.capacity(), overflows, queue.getDropped()));
+                }catch (Exception ignore){}
+            }
+        }
+        SessionActorPool pool = this.actorPool;
+        if(pool != null){
+            long overflows = pool.takeOverflows();
+            if(overflows > 0){
+                try{
+                    this.fireMessage(new MessagePoolOverflowMessage(SessionActorPool.INBOX_NAME, pool.getInboxCapacity(), overflows, pool.getDropped()));
+                }catch (Exception ignore){}
+            }
         }
     }
 
-    private void processRawPacket(){
-        RawPacket raw = rawPackets.poll();
-        while(raw != null){
-            try{
-                if(this.handler != null){
-                    this.handler.onRawPacket(raw);
-                }
-            }catch (Exception ignore){}
-            raw = rawPackets.poll();
-        }
+    private void handleRawPacket(RawPacket raw){
+        try{
+            if(this.handler != null){
+                this.handler.onRawPacket(raw);
+            }
+        }catch (Exception ignore){}
     }
 
-    private void processACKNotification(){
-        ACKNotification n = ackNotifications.poll();
-        while(n != null){
-            try{
-                if(this.handler != null){
-                    this.handler.onACKNotification(n);
-                }
-            }catch (Exception ignore){}
-            n = ackNotifications.poll();
-        }
+    private void handleACKNotification(ACKNotification n){
+        try{
+            if(this.handler != null){
+                this.handler.onACKNotification(n);
+            }
+        }catch (Exception ignore){}
     }
 
-    private void processEncapsulated(){
-        QueuedEncapsulated e = encapsulatedQueue.poll();
-        while(e != null){
-            try{
-                if(this.handler != null){
-                    this.handler.onEncapsulated(e.getSession(), e.getPacket(), e.getFlags());
-                }
-            }catch (Exception ex){
-                ex.printStackTrace();
+    private void handleEncapsulated(QueuedEncapsulated e){
+        try{
+            if(this.handler != null){
+                this.handler.onEncapsulated(e.getSession(), e.getPacket(), e.getFlags());
             }
-            e = encapsulatedQueue.poll();
+        }catch (Exception ex){
+            ex.printStackTrace();
+        }finally{
+            e.getPacket().release();
+        }
+    }
+
+    private void dispatch(ExecutorService executor, Runnable task){
+        try{
+            executor.execute(task);
+        }catch (RejectedExecutionException e){
+            task.run();
         }
     }
 
@@ -225,19 +375,19 @@ public class SessionManager extends Thread {
         RakLibInterface[] interfaces = new RakLibInterface[this.runningServer];
         int o = 0;
         for (RakLibInterface anInterface : this.interfaces) {
-            if (anInterface != null) {
-                interfaces[o] = anInterface;
+            if (anInterface != null && o < interfaces.length) {
+                interfaces[o++] = anInterface;
             }
         }
         return interfaces;
     }
 
     public void queueMessage(RakLibMessage message){
-        this.messages.offer(message);
+        this.offer(this.messages, message);
     }
 
     public void queueRaw(RawPacket pk){
-        this.rawPackets.offer(pk);
+        this.offer(this.rawPackets, pk);
     }
 
     public void queueEncapsulated(Session session, EncapsulatedPacket packet){
@@ -245,7 +395,17 @@ public class SessionManager extends Thread {
     }
 
     public void queueEncapsulated(Session session, EncapsulatedPacket packet, int flags){
-        this.encapsulatedQueue.offer(new QueuedEncapsulated(session, packet, flags));
+        SessionActorPool pool = this.actorPool;
+        if(pool != null){
+            pool.offer(session.getActorInbox(pool), new QueuedEncapsulated(session, packet, flags));
+            return;
+        }
+        this.offer(this.encapsulatedQueue, new QueuedEncapsulated(session, packet, flags));
+    }
+
+    private <E> void offer(BoundedQueue<E> queue, E element){
+        queue.offer(element, this.signal, Thread.currentThread() != this.dispatcherThread);
+        this.signal.signal();
     }
 
     public boolean collectInterfaces(boolean force){
@@ -256,6 +416,7 @@ public class SessionManager extends Thread {
                 if(this.interfaces[i] != null){
                     if(this.interfaces[i].isTerminated()){
                         this.interfaces[i] = null;
+                        this.map.clearPartition(i);
                         didCollect = true;
                     }else {
                         ++running;
@@ -270,16 +431,83 @@ public class SessionManager extends Thread {
 
     public RakLibInterface addInterface(InetSocketAddress bindAddress) throws SocketException, InterfaceOutOfPoolSizeException {
         this.threadLock.lock();
-        this.collectInterfaces(true);
-        int id = nextInterfaceId();
-        if(id < 0){
-            throw new InterfaceOutOfPoolSizeException("try to add interface but pool size is " + this.interfaces.length);
+        try{
+            this.collectInterfaces(true);
+            int id = nextInterfaceId();
+            if(id < 0){
+                throw new InterfaceOutOfPoolSizeException("try to add interface but pool size is " + this.interfaces.length);
+            }
+            RakLibInterface server = new RakLibInterface(bindAddress, this, id);
+            this.interfaces[id] = server;
+            ++this.runningServer;
+            return server;
+        }finally{
+            this.threadLock.unlock();
+        }
+    }
+
+    /**
+     * Add several interfaces bound to the same port with SO_REUSEPORT
+     *
+     * Each shard has its own socket, reader and tick thread, every remote address is pinned to one shard
+     *
+     * @param bindAddress The address binding on
+     * @param shards Number of shards, each one takes a slot of the interface pool
+     * @throws SocketException
+     * @throws InterfaceOutOfPoolSizeException
+     *
+     * @return The shards of the new interface
+     */
+    public RakLibInterface[] addInterface(InetSocketAddress bindAddress, int shards) throws SocketException, InterfaceOutOfPoolSizeException {
+        if(shards <= 1){
+            return new RakLibInterface[]{this.addInterface(bindAddress)};
+        }
+        RakLibInterface[] servers = new RakLibInterface[shards];
+        SocketException failure = null;
+        this.threadLock.lock();
+        try{
+            this.collectInterfaces(true);
+            int free = 0;
+            for(RakLibInterface anInterface : this.interfaces){
+                if(anInterface == null){
+                    ++free;
+                }
+            }
+            if(free < shards){
+                throw new InterfaceOutOfPoolSizeException("try to add " + shards + " shards but only " + free + " of " + this.interfaces.length + " slots are free");
+            }
+            ShardGroup group = new ShardGroup(bindAddress, shards);
+            try{
+                for(int i = 0; i < shards; ++i){
+                    int id = nextInterfaceId();
+                    servers[i] = new RakLibInterface(bindAddress, this, id, group, i);
+                    this.interfaces[id] = servers[i];
+                    ++this.runningServer;
+                }
+            }catch (SocketException e){//Roll back the shards which are already bound
+                for(RakLibInterface server : servers){
+                    if(server != null){
+                        server.shutdown();
+                        this.interfaces[server.getServerId()] = null;
+                        --this.runningServer;
+                    }
+                }
+                failure = e;
+            }
+        }finally{
+            this.threadLock.unlock();
+        }
+        if(failure != null){
+            for(RakLibInterface server : servers){//Joined without the lock, the shards queue messages while they stop
+                if(server != null){
+                    try{
+                        server.join();
+                    }catch (InterruptedException ignore){}
+                }
+            }
+            throw failure;
         }
-        RakLibInterface server = new RakLibInterface(bindAddress, this, id);
-        this.interfaces[id] = server;
-        ++this.runningServer;
-        this.threadLock.unlock();
-        return server;
+        return servers;
     }
 
     public void setPacketHandler(PacketHandler handler){
@@ -288,6 +516,7 @@ public class SessionManager extends Thread {
 
     public void shutdown(){
         this.isShutdown = true;
+        this.signal.signal();
         try {
             this.join();
         } catch (InterruptedException ignore) {}
@@ -314,6 +543,346 @@ public class SessionManager extends Thread {
         this.portChecking = portChecking;
     }
 
+    public boolean isChannelTransport() {
+        return channelTransport;
+    }
+
+    /**
+     * Use a non-blocking DatagramChannel for interfaces added after this call
+     *
+     * @param channelTransport Whether to use the channel transport
+     */
+    public void setChannelTransport(boolean channelTransport) {
+        this.channelTransport = channelTransport;
+    }
+
+    public boolean isDirectReceiveBuffers() {
+        return directReceiveBuffers;
+    }
+
+    /**
+     * Use direct buffers for the receive pool of the channel transport
+     *
+     * @param directReceiveBuffers Whether to allocate direct buffers
+     */
+    public void setDirectReceiveBuffers(boolean directReceiveBuffers) {
+        this.directReceiveBuffers = directReceiveBuffers;
+    }
+
+    public boolean isPooledPayloads() {
+        return pooledPayloads;
+    }
+
+    /**
+     * Pass encapsulated payloads as slices of the receive arena instead of copies
+     *
+     * Payload bytes are not copied, the decoded packet objects are still allocated for every datagram
+     *
+     * The packet is released after PacketHandler.onEncapsulated returns, a handler keeping it has to retain it
+     *
+     * @param pooledPayloads Whether payloads reference the receive arena
+     */
+    public void setPooledPayloads(boolean pooledPayloads) {
+        this.pooledPayloads = pooledPayloads;
+    }
+
+    public TransportFactory getTransportFactory() {
+        return transportFactory;
+    }
+
+    /**
+     * Create the transports of interfaces added after this call with a factory
+     *
+     * Null restores the built-in sockets selected by setChannelTransport
+     *
+     * @param transportFactory Factory to use, or null
+     */
+    public void setTransportFactory(TransportFactory transportFactory) {
+        this.transportFactory = transportFactory;
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Run interfaces added after this call event-driven instead of on the fixed tick
+     *
+     * They wake up as soon as a datagram arrives and answer the sessions which received it at once
+     *
+     * @param eventDriven Whether to use the event-driven loop
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
+    public boolean isSendPacing() {
+        return sendPacing;
+    }
+
+    /**
+     * Space the datagrams of sessions created after this call at a rate derived from their RTT and delivery rate
+     *
+     * Only sessions of event-driven interfaces are paced
+     *
+     * @param sendPacing Whether to pace sessions
+     */
+    public void setSendPacing(boolean sendPacing) {
+        this.sendPacing = sendPacing;
+    }
+
+    public long getDispatcherSpinNanos() {
+        return dispatcherSpinNanos;
+    }
+
+    /**
+     * Let the main thread spin before parking, trading CPU time for latency
+     *
+     * @param dispatcherSpinNanos Longest spin in nanoseconds, 0 parks at once
+     */
+    public void setDispatcherSpinNanos(long dispatcherSpinNanos) {
+        this.dispatcherSpinNanos = Math.max(0L, dispatcherSpinNanos);
+    }
+
+    public boolean isTimerWheel() {
+        return timerWheel;
+    }
+
+    /**
+     * Keep the deadlines of sessions in a timing wheel for interfaces added after this call
+     *
+     * A tick then only updates the sessions with a due retransmit, ACK flush or timeout, instead of every session
+     *
+     * @param timerWheel Whether to use a timing wheel
+     */
+    public void setTimerWheel(boolean timerWheel) {
+        this.timerWheel = timerWheel;
+    }
+
+    public CongestionControllerFactory getCongestionControl() {
+        return congestionControl;
+    }
+
+    /**
+     * Gate the datagrams of sessions with a congestion controller, for interfaces added after this call
+     *
+     * Interfaces may select their own one, see RakLibInterface.setCongestionControl
+     *
+     * @param congestionControl Factory of the controllers, such as SlidingWindowController.FACTORY or BbrController.FACTORY, or null to only limit retransmits per tick
+     */
+    public void setCongestionControl(CongestionControllerFactory congestionControl) {
+        this.congestionControl = congestionControl;
+    }
+
+    public SessionUpdatePool getUpdatePool() {
+        return updatePool;
+    }
+
+    public int getUpdateWorkers() {
+        SessionUpdatePool pool = this.updatePool;
+        return (pool != null) ? pool.getStripeCount() : 0;
+    }
+
+    /**
+     * Update sessions on a pool of workers shared by all interfaces, striped by address hash
+     *
+     * @param threads Number of workers, 0 updates sessions on the interface threads
+     */
+    public synchronized void setUpdateWorkers(int threads) {
+        SessionUpdatePool old = this.updatePool;
+        this.updatePool = (threads > 0) ? new SessionUpdatePool(threads) : null;
+        if(old != null){
+            old.shutdown();
+        }
+    }
+
+    public boolean isVirtualThreadDispatch() {
+        return this.handlerExecutor != null;
+    }
+
+    /**
+     * Run PacketHandler calls off the main thread, so a blocking handler does not stall the other sessions
+     *
+     * - The calls of a session run one at a time and in order, calls of different sessions run concurrently
+     * - On Java 21 and later every call runs on a virtual thread, older versions use a cached thread pool
+     *
+     * @param enabled Whether to dispatch handler calls to other threads
+     */
+    public synchronized void setVirtualThreadDispatch(boolean enabled) {
+        ExecutorService executor = this.handlerExecutor;
+        if(enabled && (executor == null)){
+            this.handlerExecutor = HandlerThreads.newExecutor("RakLib - Handler");
+        }else if(!enabled && (executor != null)){
+            this.handlerExecutor = null;
+            executor.shutdown();
+        }
+    }
+
+    public int getActorThreads() {
+        SessionActorPool pool = this.actorPool;
+        return (pool != null) ? pool.getThreads() : 0;
+    }
+
+    /**
+     * Handle the packets and ACK notifications of sessions on a pool of workers, each session has its own inbox
+     *
+     * - Interface threads queue into the inboxes directly instead of the main thread queues
+     * - The events of a session are handled one at a time and in order, different sessions are handled in parallel
+     * - Inboxes use the capacity set with setSessionInboxCapacity and the overflow policy of the ENCAPSULATED queue
+     * - Takes precedence over setVirtualThreadDispatch for these events
+     *
+     * @param threads Number of workers, 0 handles them on the main thread again
+     */
+    public synchronized void setActorThreads(int threads) {
+        SessionActorPool old = this.actorPool;
+        this.actorPool = (threads > 0) ? new SessionActorPool(threads, this.sessionInboxCapacity, this.getOverflowPolicy(EventQueue.ENCAPSULATED), this.actorConsumer, event -> {
+            if(event instanceof QueuedEncapsulated){
+                ((QueuedEncapsulated) event).getPacket().release();
+            }
+        }, event -> (event instanceof QueuedEncapsulated) && ((QueuedEncapsulated) event).isDiscardable()) : null;
+        if(old != null){
+            old.shutdown();
+        }
+    }
+
+    public int getSessionInboxCapacity() {
+        return sessionInboxCapacity;
+    }
+
+    /**
+     * Set the capacity of the session inboxes of actor pools started after this call
+     *
+     * @param capacity Minimum capacity, rounded up to a power of two
+     */
+    public void setSessionInboxCapacity(int capacity) {
+        this.sessionInboxCapacity = capacity;
+    }
+
+    /**
+     * Set the capacity of an event queue
+     *
+     * Events queued meanwhile may be lost, call it before adding interfaces
+     *
+     * @param queue Queue to resize
+     * @param capacity Minimum capacity, rounded up to a power of two, never below the events waiting in the queue
+     */
+    public synchronized void setQueueCapacity(EventQueue queue, int capacity) {
+        switch(queue){
+            case MESSAGES:
+                this.resize(queue, this.messages, capacity, resized -> this.messages = resized);
+                break;
+            case RAW_PACKETS:
+                this.resize(queue, this.rawPackets, capacity, resized -> this.rawPackets = resized);
+                break;
+            case ACK_NOTIFICATIONS:
+                this.resize(queue, this.ackNotifications, capacity, resized -> this.ackNotifications = resized);
+                break;
+            case ENCAPSULATED:
+                this.resize(queue, this.encapsulatedQueue, capacity, resized -> this.encapsulatedQueue = resized);
+                break;
+        }
+        this.signal.signal();
+    }
+
+    /**
+     * Set the capacity of every event queue
+     *
+     * @param capacity Minimum capacity, rounded up to a power of two
+     */
+    public synchronized void setQueueCapacity(int capacity) {
+        for(EventQueue queue : EventQueue.values()){
+            this.setQueueCapacity(queue, capacity);
+        }
+    }
+
+    public int getQueueCapacity(EventQueue queue) {
+        return this.getQueue(queue).capacity();
+    }
+
+    public int getQueueSize(EventQueue queue) {
+        return this.getQueue(queue).size();
+    }
+
+    /**
+     * @param queue Queue to query
+     * @return Events discarded by the queue since it was created
+     */
+    public long getDroppedEvents(EventQueue queue) {
+        return this.getQueue(queue).getDropped();
+    }
+
+    public OverflowPolicy getOverflowPolicy(EventQueue queue) {
+        return this.getQueue(queue).getPolicy();
+    }
+
+    /**
+     * Choose what happens to events queued while a queue is full
+     *
+     * Session and interface lifecycle messages, reliable frames and ACK receipts are never dropped, producers wait for room instead
+     *
+     * @param queue Queue to configure
+     * @param policy Overflow policy
+     */
+    public synchronized void setOverflowPolicy(EventQueue queue, OverflowPolicy policy) {
+        this.getQueue(queue).setPolicy(Objects.requireNonNull(policy));
+    }
+
+    public synchronized void setOverflowPolicy(OverflowPolicy policy) {
+        for(EventQueue queue : EventQueue.values()){
+            this.setOverflowPolicy(queue, policy);
+        }
+    }
+
+    /**
+     * Replace a queue and move its events over, the new queue takes at least every event waiting in the old one
+     *
+     * Events which still do not fit, queued by producers which had not seen the new queue yet, go through its overflow
+     * policy and discarder like any other event
+     */
+    private <E> void resize(EventQueue queue, BoundedQueue<E> old, int capacity, Consumer<BoundedQueue<E>> install) {
+        BoundedQueue<E> resized = SessionManager.newQueue(queue, Math.max(capacity, old.size()), old.getPolicy());
+        install.accept(resized);
+        old.close();
+        E element;
+        while((element = old.poll()) != null){
+            resized.offer(element, null, false);
+        }
+    }
+
+    private BoundedQueue<?> getQueue(EventQueue queue) {
+        switch(queue){
+            case MESSAGES:
+                return this.messages;
+            case RAW_PACKETS:
+                return this.rawPackets;
+            case ACK_NOTIFICATIONS:
+                return this.ackNotifications;
+            default:
+                return this.encapsulatedQueue;
+        }
+    }
+
+    /**
+     * Only raw packets, unreliable frames and informational messages are subject to the overflow policy
+     */
+    private static <E> BoundedQueue<E> newQueue(EventQueue queue, int capacity, OverflowPolicy policy) {
+        Consumer<? super E> discarder = null;
+        Predicate<? super E> discardable = null;
+        switch(queue){
+            case MESSAGES:
+                discardable = message -> ((RakLibMessage) message).isDiscardable();
+                break;
+            case ACK_NOTIFICATIONS:
+                discardable = notification -> false;//Receipts of reliable frames
+                break;
+            case ENCAPSULATED:
+                discarder = e -> ((QueuedEncapsulated) e).getPacket().release();
+                discardable = e -> ((QueuedEncapsulated) e).isDiscardable();
+                break;
+        }
+        return new BoundedQueue<>(queue.getName(), capacity, policy, discarder, discardable);
+    }
+
     public NetworkManager getNetworkManager() {
         return networkManager;
     }
@@ -358,44 +927,121 @@ public class SessionManager extends Thread {
         this.maxPlayer = maxPlayer;
     }
 
+    /**
+     * Event queues drained by the main thread
+     */
+    public enum EventQueue {
+        MESSAGES("messages"),
+        RAW_PACKETS("rawPackets"),
+        ACK_NOTIFICATIONS("ackNotifications"),
+        ENCAPSULATED("encapsulatedQueue");
+
+        private final String name;
+
+        EventQueue(String name){
+            this.name = name;
+        }
+
+        public String getName(){
+            return this.name;
+        }
+    }
+
+    /**
+     * Sessions by remote address
+     *
+     * - Lookups and inserts take no global lock, a session is created at most once per address with computeIfAbsent
+     * - Each interface has its own index, iterated in place by its tick
+     */
     public class SessionMap extends ConcurrentHashMap<InetSocketAddress, Session> {
+        /**
+         * Sessions of each interface, indexed by interface id
+         */
+        private final ConcurrentHashMap<InetSocketAddress, Session>[] partitions;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public SessionMap(){
+            this.partitions = new ConcurrentHashMap[SessionManager.MAX_SERVER_INTERFACES];
+            for(int i = 0; i < this.partitions.length; ++i){
+                this.partitions[i] = new ConcurrentHashMap<>();
+            }
+        }
+
         public Session getSession(InetSocketAddress address, RakLibInterface rakLibInterface){
-            synchronized (this){
-                Session session;
-                if(this.containsKey(address)){
-                    session = this.get(address);
-                }else{
-                    session = new Session(SessionManager.this, address, rakLibInterface);
-                    this.put(address, session);
-                }
+            Session session = this.get(address);
+            if(session != null){
                 return session;
             }
+            return this.computeIfAbsent(address, key -> {
+                Session created = new Session(SessionManager.this, key, rakLibInterface);
+                this.partitions[rakLibInterface.getServerId()].put(key, created);
+                return created;
+            });
         }
 
         public void removeSession(InetSocketAddress address){
-            synchronized (this){
-                if(this.containsKey(address)){
-                    this.remove(address);
+            Session session = this.remove(address);
+            if(session != null){
+                RakLibInterface owner = session.getOwnedInterface();
+                if(owner != null){
+                    this.partitions[owner.getServerId()].remove(address, session);
+                }else{
+                    for(ConcurrentHashMap<InetSocketAddress, Session> partition : this.partitions){
+                        partition.remove(address, session);
+                    }
                 }
             }
         }
 
+        /**
+         * Get the sessions of an interface without copying them
+         *
+         * The view is weakly consistent, sessions may be added or removed while it is iterated
+         *
+         * @param rakLibInterface Interface owning the sessions
+         * @return Live view of the sessions
+         */
+        public Collection<Session> getSessions(RakLibInterface rakLibInterface){
+            return this.partitions[rakLibInterface.getServerId()].values();
+        }
+
+        /**
+         * @param rakLibInterface Interface owning the sessions
+         * @return Copy of the sessions, use getSessions to iterate them without copying
+         */
         public Session[] findSessions(final RakLibInterface rakLibInterface){
-            synchronized (this){
-                final ArrayList<Session> sessions = new ArrayList<>();
-                this.forEach((address, session) -> {
-                    if(session.getOwnedInterface().equals(rakLibInterface)){
-                        sessions.add(session);
-                    }
-                });
-                return sessions.toArray(new Session[sessions.size()]);
-            }
+            Collection<Session> sessions = this.getSessions(rakLibInterface);
+            return sessions.toArray(new Session[0]);
         }
 
         public void update(RakLibInterface rakLibInterface, long millis){
-            Session[] sessions = this.findSessions(rakLibInterface);
-            for(Session session : sessions){
-                session.update(millis);
+            this.update(rakLibInterface, millis, System.nanoTime() + (RakLibInterface.NORMAL_TICK * 1000 * 1000L));
+        }
+
+        /**
+         * Update the sessions of an interface, on the update workers if they are enabled
+         *
+         * @param rakLibInterface Interface owning the sessions
+         * @param millis Current time
+         * @param deadlineNanos System.nanoTime() the update workers stop at
+         */
+        public void update(RakLibInterface rakLibInterface, long millis, long deadlineNanos){
+            Collection<Session> sessions = this.getSessions(rakLibInterface);
+            SessionUpdatePool pool = SessionManager.this.getUpdatePool();
+            if(pool != null){
+                pool.update(rakLibInterface.getUpdateStripes(pool), sessions, millis, deadlineNanos);
+            }else{
+                for(Session session : sessions){
+                    session.update(millis);
+                }
+            }
+        }
+
+        void clearPartition(int serverId){
+            ConcurrentHashMap<InetSocketAddress, Session> partition = this.partitions[serverId];
+            for(Map.Entry<InetSocketAddress, Session> entry : partition.entrySet()){
+                this.remove(entry.getKey(), entry.getValue());
+                partition.remove(entry.getKey(), entry.getValue());
             }
         }
     }
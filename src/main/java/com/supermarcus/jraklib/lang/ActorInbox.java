@@ -0,0 +1,66 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Bounded inbox of events handled one at a time and in order, on a shared executor
+ *
+ * - Events are drained in batches as described in {@link SerialDrain}
+ * - A full inbox applies the overflow policy of its queue
+ *
+ * @param <E> Event type
+ */
+public class ActorInbox<E> extends SerialDrain {
+    private final BoundedQueue<E> events;
+
+    private final Consumer<? super E> handler;
+
+    private final Runnable wakeup = this::schedule;
+
+    /**
+     * @param executor Executor running the drains
+     * @param events Queue holding the events
+     * @param handler Handles every event taken from the queue
+     */
+    public ActorInbox(Executor executor, BoundedQueue<E> events, Consumer<? super E> handler){
+        super(executor);
+        this.events = events;
+        this.handler = handler;
+    }
+
+    /**
+     * Queue an event and make sure a drain is scheduled
+     *
+     * @param event Event to queue
+     * @param mayBlock False on a thread of the executor, which can not wait for its own drain
+     * @return False if the event was discarded
+     */
+    public boolean offer(E event, boolean mayBlock){
+        boolean queued = this.events.offer(event, this.wakeup, mayBlock);
+        this.schedule();
+        return queued;
+    }
+
+    /**
+     * @return Overflows since the last call, 0 if none
+     */
+    public long takeOverflows(){
+        return this.events.takeOverflows();
+    }
+
+    /**
+     * @return Events waiting to be handled
+     */
+    public int size(){
+        return this.events.size();
+    }
+
+    protected boolean isEmpty(){
+        return this.events.isEmpty();
+    }
+
+    protected void drain(int limit){
+        this.events.drain(this.handler, limit);
+    }
+}
@@ -0,0 +1,219 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Preallocated event queue with an overflow policy
+ *
+ * - Elements live in a RingBuffer, queueing never allocates
+ * - Discarded elements are passed to the discarder, so they can be released
+ * - Elements the discardable test refuses are never discarded, whatever the policy: they wait for room, or are spilled
+ *   to an unbounded list taken before the ring when their producer can not wait
+ * - Overflows are counted, the consumer collects the count with {@link #takeOverflows()} to report it
+ *
+ * @param <E> Element type
+ */
+public class BoundedQueue<E> {
+    /**
+     * Time a blocked producer parks before it tries again
+     */
+    public static final long BLOCK_PARK_NANOS = 50 * 1000L;
+
+    private final String name;
+
+    private final RingBuffer<E> ring;
+
+    private final Consumer<? super E> discarder;
+
+    private final Predicate<? super E> discardable;
+
+    /**
+     * Elements which must not be discarded but did not fit the ring
+     */
+    private final ConcurrentLinkedQueue<E> spill = new ConcurrentLinkedQueue<>();
+
+    volatile private OverflowPolicy policy;
+
+    volatile private boolean closed = false;
+
+    private final AtomicLong dropped = new AtomicLong(0L);
+
+    private final AtomicLong overflows = new AtomicLong(0L);
+
+    /**
+     * @param name Name used in overflow reports
+     * @param capacity Minimum capacity, rounded up to a power of two
+     * @param policy Overflow policy
+     * @param discarder Receives discarded elements, or null
+     */
+    public BoundedQueue(String name, int capacity, OverflowPolicy policy, Consumer<? super E> discarder){
+        this(name, capacity, policy, discarder, null);
+    }
+
+    /**
+     * @param name Name used in overflow reports
+     * @param capacity Minimum capacity, rounded up to a power of two
+     * @param policy Overflow policy
+     * @param discarder Receives discarded elements, or null
+     * @param discardable Tells which elements may be discarded, null if all of them may
+     */
+    public BoundedQueue(String name, int capacity, OverflowPolicy policy, Consumer<? super E> discarder, Predicate<? super E> discardable){
+        this.name = name;
+        this.ring = new RingBuffer<>(capacity);
+        this.policy = policy;
+        this.discarder = discarder;
+        this.discardable = discardable;
+    }
+
+    /**
+     * Add an element, applying the overflow policy if the queue is full
+     *
+     * @param element Element to add
+     * @param wakeup Run before a blocked producer parks so the consumer drains, or null
+     * @param mayBlock False on the consuming thread, which can not wait for itself
+     * @return False if the element was discarded
+     */
+    public boolean offer(E element, Runnable wakeup, boolean mayBlock){
+        if(this.ring.offer(element)){
+            return true;
+        }
+        this.overflows.incrementAndGet();
+        boolean discardable = this.isDiscardable(element);
+        switch(this.policy){
+            case DROP_OLDEST:
+                do{
+                    E oldest = this.ring.poll();
+                    if(oldest != null){
+                        this.evict(oldest);
+                    }
+                }while(!this.ring.offer(element));
+                return true;
+            case BLOCK:
+                if(this.await(element, wakeup, mayBlock)){
+                    return true;
+                }
+                break;
+            default:
+                if(!discardable && this.await(element, wakeup, mayBlock)){
+                    return true;
+                }
+        }
+        if(discardable){
+            this.discard(element);
+            return false;
+        }
+        this.spill.offer(element);//Only the consuming thread or a closed queue get here
+        return true;
+    }
+
+    public E poll(){
+        E element = this.spill.poll();
+        return (element != null) ? element : this.ring.poll();
+    }
+
+    /**
+     * Take up to limit elements in FIFO order
+     *
+     * @param consumer Receives every element taken
+     * @param limit Maximum number of elements
+     * @return Number of elements taken
+     */
+    public int drain(Consumer<? super E> consumer, int limit){
+        int drained = 0;
+        E element;
+        while(drained < limit && (element = this.spill.poll()) != null){
+            consumer.accept(element);
+            ++drained;
+        }
+        return drained + this.ring.drain(consumer, limit - drained);
+    }
+
+    /**
+     * Stop blocking producers, elements which do not fit are discarded from now on
+     */
+    public void close(){
+        this.closed = true;
+    }
+
+    /**
+     * @return Overflows since the last call, 0 if none
+     */
+    public long takeOverflows(){
+        return (this.overflows.get() == 0L) ? 0L : this.overflows.getAndSet(0L);
+    }
+
+    /**
+     * @return Elements discarded since the queue was created
+     */
+    public long getDropped(){
+        return this.dropped.get();
+    }
+
+    public OverflowPolicy getPolicy(){
+        return this.policy;
+    }
+
+    public void setPolicy(OverflowPolicy policy){
+        this.policy = policy;
+    }
+
+    public String getName(){
+        return this.name;
+    }
+
+    public int size(){
+        return this.ring.size() + this.spill.size();
+    }
+
+    public boolean isEmpty(){
+        return this.ring.isEmpty() && this.spill.isEmpty();
+    }
+
+    public int capacity(){
+        return this.ring.capacity();
+    }
+
+    private boolean isDiscardable(E element){
+        return (this.discardable == null) || this.discardable.test(element);
+    }
+
+    /**
+     * Wait until the element fits the ring
+     *
+     * @return False if the producer may not wait or the queue was closed meanwhile
+     */
+    private boolean await(E element, Runnable wakeup, boolean mayBlock){
+        while(mayBlock && !this.closed){
+            if(wakeup != null){
+                wakeup.run();
+            }
+            LockSupport.parkNanos(this, BoundedQueue.BLOCK_PARK_NANOS);
+            if(this.ring.offer(element)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make room for a newer element, the oldest one is kept aside if it must not be discarded
+     */
+    private void evict(E oldest){
+        if(this.isDiscardable(oldest)){
+            this.discard(oldest);
+        }else{
+            this.spill.offer(oldest);
+        }
+    }
+
+    private void discard(E element){
+        this.dropped.incrementAndGet();
+        if(this.discarder != null){
+            this.discarder.accept(element);
+        }
+    }
+}
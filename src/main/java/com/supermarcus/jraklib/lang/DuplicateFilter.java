@@ -0,0 +1,82 @@
+package com.supermarcus.jraklib.lang;
+
+/**
+ * Sliding bitmap of the 24 bit indexes seen, to let every index through once
+ *
+ * - The bitmap covers size indexes, an index ahead of it slides it forward and clears what falls out
+ * - Indexes behind the bitmap are taken as duplicates, they are older than the last size indexes seen
+ * - Indexes more than a bitmap ahead of it are refused, so a bad index can not push out the whole window
+ * - Nothing is allocated after construction, not thread-safe
+ */
+public class DuplicateFilter {
+    private final long[] bits;
+
+    private final int size;
+
+    /**
+     * Lowest index in the bitmap
+     */
+    private int base = 0;
+
+    /**
+     * @param size Indexes covered, rounded up to a power of two between 64 and Triad.MAX_WINDOW
+     */
+    public DuplicateFilter(int size){
+        this.size = Triad.windowSize(size, 64);
+        this.bits = new long[this.size / 64];
+    }
+
+    /**
+     * @param index Index of a received element
+     * @return True the first time an index is seen, false for duplicates and refused indexes
+     */
+    public boolean accept(int index){
+        index &= Triad.MASK;
+        int offset = Triad.distance(this.base, index);
+        if((offset < 0) || (offset >= (this.size * 2))){
+            return false;
+        }
+        if(offset >= this.size){
+            this.slide((index - this.size + 1) & Triad.MASK);
+        }
+        int bit = index & (this.size - 1);
+        long mask = 1L << bit;
+        if((this.bits[bit >>> 6] & mask) != 0){
+            return false;
+        }
+        this.bits[bit >>> 6] |= mask;
+        return true;
+    }
+
+    /**
+     * @param index Index of a received element
+     * @return Whether accept would refuse the index for being more than a bitmap ahead
+     */
+    public boolean isTooFarAhead(int index){
+        return Triad.distance(this.base, index & Triad.MASK) >= (this.size * 2);
+    }
+
+    /**
+     * @return Lowest index which is not taken as a duplicate
+     */
+    public int getBase(){
+        return this.base;
+    }
+
+    public int getSize(){
+        return this.size;
+    }
+
+    private void slide(int base){
+        while(this.base != base){
+            int bit = this.base & (this.size - 1);
+            if(((bit & 63) == 0) && (Triad.distance(this.base, base) >= 64)){
+                this.bits[bit >>> 6] = 0L;
+                this.base = (this.base + 64) & Triad.MASK;
+            }else{
+                this.bits[bit >>> 6] &= ~(1L << bit);
+                this.base = (this.base + 1) & Triad.MASK;
+            }
+        }
+    }
+}
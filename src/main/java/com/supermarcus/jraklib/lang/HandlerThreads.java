@@ -0,0 +1,33 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads running PacketHandler calls off the main thread
+ *
+ * - This version starts a cached pool of daemon threads
+ * - On Java 21 and later the jar holds a version which starts a virtual thread per call
+ */
+public class HandlerThreads {
+    /**
+     * @return Whether handler calls run on virtual threads
+     */
+    public static boolean isVirtual(){
+        return false;
+    }
+
+    /**
+     * @param name Name prefix of the threads
+     * @return A new executor
+     */
+    public static ExecutorService newExecutor(String name){
+        final AtomicInteger counter = new AtomicInteger(0);
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + " #" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
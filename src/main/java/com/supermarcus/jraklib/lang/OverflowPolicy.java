@@ -0,0 +1,23 @@
+package com.supermarcus.jraklib.lang;
+
+/**
+ * What a bounded queue does with an element added while it is full
+ *
+ * - Applies to the elements the queue may discard, the others wait for room or are kept aside
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the element being added
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the oldest queued elements until the new one fits
+     */
+    DROP_OLDEST,
+
+    /**
+     * Wait until the consumer made room, the consuming thread itself drops the element instead of waiting for itself
+     */
+    BLOCK
+}
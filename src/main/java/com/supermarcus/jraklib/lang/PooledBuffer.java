@@ -0,0 +1,76 @@
+package com.supermarcus.jraklib.lang;
+
+import com.supermarcus.jraklib.network.BufferArena;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted page of a buffer arena
+ *
+ * - The page goes back to its arena once the last reference is released
+ */
+public class PooledBuffer {
+    private ByteBuffer buffer;
+
+    private BufferArena arena;
+
+    private AtomicInteger references = new AtomicInteger(0);
+
+    /**
+     * @param buffer Backing memory
+     * @param arena Arena to recycle into, or null for an unpooled buffer
+     */
+    public PooledBuffer(ByteBuffer buffer, BufferArena arena){
+        this.buffer = buffer;
+        this.arena = arena;
+    }
+
+    public ByteBuffer getBuffer(){
+        return this.buffer;
+    }
+
+    public PooledBuffer retain(){
+        int count;
+        do{
+            count = this.references.get();
+            if(count <= 0){
+                throw new IllegalStateException("retain of a released buffer");
+            }
+        }while(!this.references.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drop a reference
+     *
+     * @return True if this was the last reference and the page has been recycled
+     */
+    public boolean release(){
+        int count;
+        do{
+            count = this.references.get();
+            if(count <= 0){
+                throw new IllegalStateException("buffer released too often");
+            }
+        }while(!this.references.compareAndSet(count, count - 1));
+        if(count == 1){
+            if(this.arena != null){
+                this.arena.recycle(this);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public int getReferenceCount(){
+        return this.references.get();
+    }
+
+    /**
+     * Hand the page out again with a single reference, only used by the owning arena
+     */
+    public void reset(){
+        this.references.set(1);
+    }
+}
@@ -27,4 +27,20 @@ public class QueuedEncapsulated {
     public Session getSession() {
         return session;
     }
+
+    /**
+     * Reliable frames were acknowledged already, the peer will not send them again, so only unreliable ones may be dropped
+     *
+     * @return Whether the frame may be dropped while the queue is full
+     */
+    public boolean isDiscardable() {
+        switch(this.packet.getReliability()){
+            case EncapsulatedPacket.UNRELIABLE:
+            case EncapsulatedPacket.UNRELIABLE_SEQUENCED:
+            case EncapsulatedPacket.UNRELIABLE_WITH_ACK_RECEIPT:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
@@ -5,11 +5,16 @@ import com.supermarcus.jraklib.protocol.raklib.data.DataPacket;
 public class RecoveryDataPacket {
     private long sendTime;
 
+    private long sendNanos = System.nanoTime();
+
     private DataPacket packet;
 
+    private int length;
+
     public RecoveryDataPacket(DataPacket packet, long sendTime){
         this.packet = packet;
         this.sendTime = sendTime;
+        this.length = packet.getLength();
     }
 
     public long getSendTime() {
@@ -20,6 +25,20 @@ public class RecoveryDataPacket {
         this.sendTime = sendTime;
     }
 
+    /**
+     * @return System.nanoTime() when the packet was sent, used for RTT samples
+     */
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    /**
+     * @return Size of the datagram when it was sent, counted as in flight until it is acknowledged or lost
+     */
+    public int getLength() {
+        return length;
+    }
+
     public DataPacket getPacket() {
         return packet;
     }
@@ -0,0 +1,112 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.function.Consumer;
+
+/**
+ * Puts elements numbered with 24 bit indexes back in order, kept in a ring of slots indexed by index % size
+ *
+ * - The element with the next index can be polled at once, later ones wait in their slot until the gap is filled
+ * - Elements behind the next index or already held are duplicates, both are found in O(1)
+ * - Elements size or more indexes ahead are refused, the sender has to send them again
+ * - Not thread-safe
+ *
+ * @param <E> Element type
+ */
+public class ReorderBuffer<E> {
+    private final Object[] slots;
+
+    private final int mask;
+
+    private int next = 0;
+
+    private int held = 0;
+
+    /**
+     * @param size Slots, rounded up to a power of two of at most Triad.MAX_WINDOW, as a larger ring has slots no index can reach
+     */
+    public ReorderBuffer(int size){
+        if(size < 1){
+            throw new IllegalArgumentException("size must be positive, got " + size);
+        }
+        this.slots = new Object[Triad.windowSize(size, 1)];
+        this.mask = this.slots.length - 1;
+    }
+
+    /**
+     * Hold an element until its turn, poll afterwards to take the elements which are ready
+     *
+     * @param index Index of the element
+     * @param element Element
+     * @return False if the element is a duplicate or too far ahead, it is not kept then
+     */
+    public boolean offer(int index, E element){
+        if(!this.isFree(index)){
+            return false;
+        }
+        this.slots[index & this.mask] = element;
+        ++this.held;
+        return true;
+    }
+
+    /**
+     * @return The element with the next index, or null if it did not arrive yet
+     */
+    @SuppressWarnings("unchecked")
+    public E poll(){
+        int slot = this.next & this.mask;
+        E element = (E) this.slots[slot];
+        if(element != null){
+            this.slots[slot] = null;
+            --this.held;
+            this.next = (this.next + 1) & Triad.MASK;
+        }
+        return element;
+    }
+
+    /**
+     * Drop every held element
+     *
+     * @param discarder Receives the dropped elements, so they can be released
+     */
+    @SuppressWarnings("unchecked")
+    public void clear(Consumer<? super E> discarder){
+        for(int i = 0; i < this.slots.length; ++i){
+            if(this.slots[i] != null){
+                discarder.accept((E) this.slots[i]);
+            }
+            this.slots[i] = null;
+        }
+        this.held = 0;
+    }
+
+    /**
+     * @param index Index of an element
+     * @return Whether offer would refuse the element for being size or more indexes ahead
+     */
+    public boolean isTooFarAhead(int index){
+        return Triad.distance(this.next, index) >= this.slots.length;
+    }
+
+    /**
+     * @return Index of the next element handed out
+     */
+    public int getNext(){
+        return this.next;
+    }
+
+    /**
+     * @return Elements waiting for an earlier one
+     */
+    public int getHeld(){
+        return this.held;
+    }
+
+    public int capacity(){
+        return this.slots.length;
+    }
+
+    private boolean isFree(int index){
+        int offset = Triad.distance(this.next, index);
+        return (offset >= 0) && (offset < this.slots.length) && (this.slots[index & this.mask] == null);
+    }
+}
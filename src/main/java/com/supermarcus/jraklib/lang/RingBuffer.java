@@ -0,0 +1,134 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free FIFO ring
+ *
+ * - Slots are preallocated, offer and poll never allocate
+ * - Any number of producers and consumers may use it concurrently
+ *
+ * @param <E> Element type
+ */
+public class RingBuffer<E> {
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong(0L);
+
+    private final AtomicLong tail = new AtomicLong(0L);
+
+    /**
+     * @param capacity Minimum capacity, rounded up to a power of two of at least 2
+     */
+    public RingBuffer(int capacity){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity));//With one slot a full slot looks free to the next offer
+        if(size < capacity){
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; ++i){
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Append an element
+     *
+     * @param element Element to add
+     * @return False if the ring is full
+     */
+    public boolean offer(E element){
+        if(element == null){
+            throw new NullPointerException();
+        }
+        long position = this.tail.get();
+        int index;
+        while(true){
+            index = (int) position & this.mask;
+            long diff = this.sequences.get(index) - position;
+            if(diff == 0){
+                if(this.tail.compareAndSet(position, position + 1)){
+                    break;
+                }
+                position = this.tail.get();
+            }else if(diff < 0){
+                return false;
+            }else{
+                position = this.tail.get();
+            }
+        }
+        this.elements.lazySet(index, element);
+        this.sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest element
+     *
+     * @return The element or null if the ring is empty
+     */
+    public E poll(){
+        long position = this.head.get();
+        int index;
+        while(true){
+            index = (int) position & this.mask;
+            long diff = this.sequences.get(index) - (position + 1);
+            if(diff == 0){
+                if(this.head.compareAndSet(position, position + 1)){
+                    break;
+                }
+                position = this.head.get();
+            }else if(diff < 0){
+                return null;
+            }else{
+                position = this.head.get();
+            }
+        }
+        E element = this.elements.get(index);
+        this.elements.lazySet(index, null);
+        this.sequences.lazySet(index, position + this.mask + 1);
+        return element;
+    }
+
+    /**
+     * Take up to limit elements in FIFO order
+     *
+     * @param consumer Receives every element taken
+     * @param limit Maximum number of elements
+     * @return Number of elements taken
+     */
+    public int drain(Consumer<? super E> consumer, int limit){
+        int drained = 0;
+        E element;
+        while(drained < limit && (element = this.poll()) != null){
+            consumer.accept(element);
+            ++drained;
+        }
+        return drained;
+    }
+
+    public int size(){
+        long size = this.tail.get() - this.head.get();
+        return (int) Math.max(0, Math.min(size, this.capacity()));
+    }
+
+    public boolean isEmpty(){
+        return this.tail.get() == this.head.get();
+    }
+
+    public int capacity(){
+        return this.mask + 1;
+    }
+}
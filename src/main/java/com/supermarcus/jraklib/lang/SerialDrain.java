@@ -0,0 +1,69 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queue drained one element at a time and in order, on a shared executor
+ *
+ * - At most one drain of the queue is submitted to the executor at a time
+ * - A drain gives its thread back after BATCH_SIZE elements, so busy queues can not starve the others
+ * - If the executor rejects the drain it runs on the calling thread
+ */
+public abstract class SerialDrain {
+    public static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Runnable drain = this::drain;
+
+    /**
+     * @param executor Executor running the drains
+     */
+    protected SerialDrain(Executor executor){
+        this.executor = executor;
+    }
+
+    public Executor getExecutor(){
+        return this.executor;
+    }
+
+    /**
+     * @return Elements waiting
+     */
+    public abstract int size();
+
+    protected abstract boolean isEmpty();
+
+    /**
+     * Handle queued elements in order, only one drain runs at a time
+     *
+     * @param limit Maximum number of elements
+     */
+    protected abstract void drain(int limit);
+
+    /**
+     * Submit a drain unless the queue is empty or a drain is already submitted, called after queueing
+     */
+    protected void schedule(){
+        if(!this.isEmpty() && this.scheduled.compareAndSet(false, true)){
+            try{
+                this.executor.execute(this.drain);
+            }catch (RejectedExecutionException e){
+                this.drain();
+            }
+        }
+    }
+
+    private void drain(){
+        try{
+            this.drain(SerialDrain.BATCH_SIZE);
+        }finally{
+            this.scheduled.set(false);
+            this.schedule();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time in the order they were queued, on a shared executor
+ *
+ * Tasks are drained in batches as described in {@link SerialDrain}
+ */
+public class SerialExecutor extends SerialDrain implements Executor {
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    public SerialExecutor(Executor executor){
+        super(executor);
+    }
+
+    public void execute(Runnable task){
+        this.tasks.offer(task);
+        this.schedule();
+    }
+
+    /**
+     * @return Tasks waiting to run
+     */
+    public int size(){
+        return this.tasks.size();
+    }
+
+    protected boolean isEmpty(){
+        return this.tasks.isEmpty();
+    }
+
+    protected void drain(int limit){
+        int count = 0;
+        Runnable task;
+        while((count++ < limit) && ((task = this.tasks.poll()) != null)){
+            task.run();
+        }
+    }
+}
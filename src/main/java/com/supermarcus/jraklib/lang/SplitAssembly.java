@@ -0,0 +1,135 @@
+package com.supermarcus.jraklib.lang;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payload of a split packet put together from its fragments
+ *
+ * - One buffer of splitCount fragments is allocated once the fragment size is known, fragments are copied to their place
+ * - Every fragment but the last has the size of the others, the last one may be shorter
+ * - Received fragments are kept in a bitmap, duplicates are found in O(1)
+ * - Not thread-safe
+ */
+public class SplitAssembly {
+    private final int splitCount;
+
+    private final long[] received;
+
+    private final long startTime;
+
+    private int receivedCount = 0;
+
+    private int fragmentSize = -1;
+
+    private byte[] buffer = null;
+
+    /**
+     * Last fragment, kept aside while the fragment size is not known yet
+     */
+    private byte[] lastFragment = null;
+
+    private int lastLength = 0;
+
+    /**
+     * @param splitCount Fragments of the packet
+     * @param startTime Time the first fragment arrived
+     */
+    public SplitAssembly(int splitCount, long startTime){
+        if(splitCount < 1){
+            throw new IllegalArgumentException("splitCount must be positive, got " + splitCount);
+        }
+        this.splitCount = splitCount;
+        this.received = new long[(splitCount + 63) / 64];
+        this.startTime = startTime;
+    }
+
+    /**
+     * @param index Fragment index
+     * @return Whether the fragment was added already
+     */
+    public boolean isReceived(int index){
+        return (index >= 0) && (index < this.splitCount) && ((this.received[index >>> 6] & (1L << index)) != 0);
+    }
+
+    /**
+     * Copy a fragment to its place
+     *
+     * @param index Fragment index
+     * @param fragment Fragment payload, read up to its limit
+     * @return False if the fragment does not fit the packet, which can not be put together then
+     */
+    public boolean add(int index, ByteBuffer fragment){
+        if((index < 0) || (index >= this.splitCount) || this.isReceived(index)){
+            return false;
+        }
+        int length = fragment.remaining();
+        boolean last = index == (this.splitCount - 1);
+        if(last){
+            if((this.fragmentSize >= 0) && (length > this.fragmentSize)){
+                return false;
+            }
+            this.lastLength = length;
+        }else if(this.fragmentSize < 0){
+            if((this.lastFragment != null) && (this.lastFragment.length > length)){
+                return false;
+            }
+            this.fragmentSize = length;
+        }else if(length != this.fragmentSize){
+            return false;
+        }
+
+        if((this.buffer == null) && (this.fragmentSize < 0) && (this.splitCount > 1)){
+            this.lastFragment = new byte[length];
+            fragment.get(this.lastFragment);
+        }else{
+            if(this.buffer == null){
+                this.buffer = new byte[(this.splitCount == 1) ? length : (this.fragmentSize * this.splitCount)];
+                if(this.lastFragment != null){
+                    System.arraycopy(this.lastFragment, 0, this.buffer, this.fragmentSize * (this.splitCount - 1), this.lastLength);
+                    this.lastFragment = null;
+                }
+            }
+            fragment.get(this.buffer, (this.splitCount == 1) ? 0 : (this.fragmentSize * index), length);
+        }
+        this.received[index >>> 6] |= 1L << index;
+        ++this.receivedCount;
+        return true;
+    }
+
+    public boolean isComplete(){
+        return this.receivedCount == this.splitCount;
+    }
+
+    /**
+     * @return Payload of the whole packet backed by the assembly buffer, null while fragments are missing
+     */
+    public ByteBuffer getPayload(){
+        if(!this.isComplete()){
+            return null;
+        }
+        int length = (this.splitCount == 1) ? this.buffer.length : ((this.fragmentSize * (this.splitCount - 1)) + this.lastLength);
+        return ByteBuffer.wrap(this.buffer, 0, length);
+    }
+
+    /**
+     * @return Bytes held for the packet
+     */
+    public int getSize(){
+        if(this.buffer != null){
+            return this.buffer.length;
+        }
+        return (this.lastFragment != null) ? this.lastFragment.length : 0;
+    }
+
+    public int getSplitCount(){
+        return this.splitCount;
+    }
+
+    public int getReceivedCount(){
+        return this.receivedCount;
+    }
+
+    public long getStartTime(){
+        return this.startTime;
+    }
+}
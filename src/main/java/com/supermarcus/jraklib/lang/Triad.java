@@ -0,0 +1,37 @@
+package com.supermarcus.jraklib.lang;
+
+/**
+ * Arithmetic on the 24 bit indexes and sequence numbers of the protocol, which wrap around
+ */
+public final class Triad {
+    public static final int MASK = 0xFFFFFF;
+
+    /**
+     * Largest window over 24 bit numbers
+     *
+     * A window looks up to twice its size ahead of its start, which has to stay below the 1 << 23 a signed distance reaches
+     */
+    public static final int MAX_WINDOW = 1 << 21;
+
+    private Triad(){}
+
+    /**
+     * @param from Number
+     * @param to Number
+     * @return Signed distance from one 24 bit number to another, in [-(1 << 23), 1 << 23)
+     */
+    public static int distance(int from, int to){
+        return ((to - from) << 8) >> 8;
+    }
+
+    /**
+     * @param size Requested window size
+     * @param minimum Smallest size, a power of two
+     * @return The size rounded up to a power of two, between minimum and MAX_WINDOW
+     */
+    public static int windowSize(int size, int minimum){
+        size = Math.min(Math.max(size, minimum), Triad.MAX_WINDOW);
+        int rounded = Integer.highestOneBit(size);
+        return (rounded < size) ? (rounded << 1) : rounded;
+    }
+}
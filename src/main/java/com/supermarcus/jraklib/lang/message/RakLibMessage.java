@@ -18,4 +18,11 @@ abstract public class RakLibMessage {
     public MessageLevel getLevel(){
         return this.level;
     }
+
+    /**
+     * @return Whether the message may be dropped while the message queue is full
+     */
+    public boolean isDiscardable(){
+        return true;
+    }
 }
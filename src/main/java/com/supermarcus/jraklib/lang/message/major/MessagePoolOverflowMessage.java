@@ -3,7 +3,45 @@ package com.supermarcus.jraklib.lang.message.major;
 import com.supermarcus.jraklib.lang.message.MessageLevel;
 
 public class MessagePoolOverflowMessage extends MajorMessage{
-    public MessagePoolOverflowMessage() {
+    private String pool;
+
+    private int capacity;
+
+    private long overflows;
+
+    private long totalDropped;
+
+    /**
+     * @param pool Name of the queue which overflowed
+     * @param capacity Capacity of the queue
+     * @param overflows Events which did not fit since the last report
+     * @param totalDropped Events discarded by the queue so far
+     */
+    public MessagePoolOverflowMessage(String pool, int capacity, long overflows, long totalDropped) {
         super(MessageLevel.ERROR);
+        this.pool = pool;
+        this.capacity = capacity;
+        this.overflows = overflows;
+        this.totalDropped = totalDropped;
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getOverflows() {
+        return overflows;
+    }
+
+    public long getTotalDropped() {
+        return totalDropped;
+    }
+
+    public String toString(){
+        return "[" + this.getClass().getSimpleName() + ": " + this.getLevel() + " " + this.getPool() + " overflowed " + this.getOverflows() + " times, " + this.getTotalDropped() + " dropped]";
     }
 }
@@ -15,6 +15,10 @@ public class InterfaceInterruptMessage extends ServerMessage {
         return this.exception;
     }
 
+    public boolean isDiscardable(){
+        return false;
+    }
+
     public String toString(){
         return super.toString() + " " + this.getException();
     }
@@ -14,4 +14,8 @@ public class InterfaceShutdownMessage extends ServerMessage {
     public long getTimeMillis(){
         return this.millis;
     }
+
+    public boolean isDiscardable(){
+        return false;
+    }
 }
@@ -14,4 +14,8 @@ public class InterfaceStartMessage extends ServerMessage {
     public long getTimeMillis(){
         return this.millis;
     }
+
+    public boolean isDiscardable(){
+        return false;
+    }
 }
@@ -15,4 +15,11 @@ abstract public class SessionMessage extends RakLibMessage {
     public Session getSession() {
         return session;
     }
+
+    /**
+     * Handlers track sessions through these messages, they are never dropped
+     */
+    public boolean isDiscardable(){
+        return false;
+    }
 }
@@ -0,0 +1,183 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.lang.PooledBuffer;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reference counted receive arena
+ *
+ * - Sockets receive straight into the free end of the current page, transports which already hold the datagram copy it there
+ * - Datagrams are stored back to back, every datagram holds a reference to its page
+ * - A page is recycled once all datagrams and payload slices on it are released
+ * - No byte array is allocated per datagram, the ReceivedPacket and its slice still are
+ * - Only the receiving thread allocates, pages may be released from any thread
+ */
+public class BufferArena {
+    /**
+     * Page size, a page takes datagrams until less than the largest datagram is left
+     */
+    public static final int PAGE_SIZE = 256 * 1024;
+
+    public static final int POOL_SIZE = 8;
+
+    private ArrayBlockingQueue<PooledBuffer> pages;
+
+    private int pageSize;
+
+    private boolean direct;
+
+    private PooledBuffer current = null;
+
+    public BufferArena(boolean direct){
+        this(BufferArena.POOL_SIZE, BufferArena.PAGE_SIZE, direct);
+    }
+
+    /**
+     * @param poolSize Pages kept for reuse
+     * @param pageSize Page size, raised to the largest datagram
+     * @param direct Whether pages are direct buffers
+     */
+    public BufferArena(int poolSize, int pageSize, boolean direct){
+        this.pages = new ArrayBlockingQueue<>(poolSize);
+        this.pageSize = Math.max(pageSize, ProtocolSocket.MAX_DATAGRAM_SIZE);
+        this.direct = direct;
+        for(int i = 0; i < poolSize; ++i){
+            this.pages.offer(new PooledBuffer(this.allocate(this.pageSize), this));
+        }
+    }
+
+    /**
+     * Receive a datagram straight into the current page
+     *
+     * A heap page is filled by the JDK through its own direct buffer, only direct pages are filled without a copy
+     *
+     * @param channel Non-blocking channel to read from
+     * @return Packet referencing its page, or null if no datagram was waiting
+     * @throws IOException
+     */
+    public ReceivedPacket receive(DatagramChannel channel) throws IOException {
+        ByteBuffer memory = this.reserve();
+        int offset = memory.position();
+        SocketAddress from = channel.receive(memory);
+        if(from == null){
+            return null;
+        }
+        return this.take(offset, memory.position() - offset, (InetSocketAddress) from);
+    }
+
+    /**
+     * Receive a datagram straight into the current page, the arena has to use heap pages
+     *
+     * @param socket Socket to read from, blocks until a datagram arrives
+     * @param packet Datagram reused for every receive, it is pointed at the page
+     * @return Packet referencing its page
+     * @throws IOException
+     */
+    public ReceivedPacket receive(DatagramSocket socket, DatagramPacket packet) throws IOException {
+        ByteBuffer memory = this.reserve();
+        int offset = memory.position();
+        packet.setData(memory.array(), memory.arrayOffset() + offset, ProtocolSocket.MAX_DATAGRAM_SIZE);
+        socket.receive(packet);
+        ((Buffer) memory).position(offset + packet.getLength());
+        return this.take(offset, packet.getLength(), (InetSocketAddress) packet.getSocketAddress());
+    }
+
+    /**
+     * Copy a datagram into the arena
+     *
+     * @param source Buffer holding the datagram between position and limit, its position is moved to the limit
+     * @param from Source address
+     * @return Packet referencing its page, it must be released once processed
+     */
+    public ReceivedPacket copy(ByteBuffer source, InetSocketAddress from){
+        int length = source.remaining();
+        PooledBuffer page;
+        if(length > this.pageSize){
+            page = new PooledBuffer(this.allocate(length), null);
+            page.reset();
+        }else{
+            if(this.current == null || this.current.getBuffer().remaining() < length){
+                this.nextPage();
+            }
+            page = this.current.retain();
+        }
+        ByteBuffer memory = page.getBuffer();
+        int offset = memory.position();
+        memory.put(source);
+
+        ByteBuffer data = memory.duplicate();
+        ((Buffer) data).limit(offset + length);
+        ((Buffer) data).position(offset);
+        return new ReceivedPacket(data.slice(), from, page);
+    }
+
+    /**
+     * Return a page with no references left
+     *
+     * @param page Page to recycle
+     */
+    public void recycle(PooledBuffer page){
+        ((Buffer) page.getBuffer()).clear();
+        this.pages.offer(page);
+    }
+
+    public int getAvailablePages(){
+        return this.pages.size();
+    }
+
+    public int getPageSize(){
+        return this.pageSize;
+    }
+
+    public boolean isDirect(){
+        return this.direct;
+    }
+
+    /**
+     * @return Memory of the current page positioned at its free end, with room for the largest datagram
+     */
+    private ByteBuffer reserve(){
+        if(this.current == null || this.current.getBuffer().remaining() < ProtocolSocket.MAX_DATAGRAM_SIZE){
+            this.nextPage();
+        }
+        return this.current.getBuffer();
+    }
+
+    /**
+     * @param offset Offset of the datagram in the current page
+     * @param length Length of the datagram
+     * @param from Source address
+     * @return Packet holding a new reference to the current page
+     */
+    private ReceivedPacket take(int offset, int length, InetSocketAddress from){
+        ByteBuffer data = this.current.getBuffer().duplicate();
+        ((Buffer) data).limit(offset + length);
+        ((Buffer) data).position(offset);
+        return new ReceivedPacket(data.slice(), from, this.current.retain());
+    }
+
+    private void nextPage(){
+        if(this.current != null){
+            this.current.release();
+        }
+        PooledBuffer page = this.pages.poll();
+        if(page == null){
+            page = new PooledBuffer(this.allocate(this.pageSize), this);
+        }
+        page.reset();
+        this.current = page;
+    }
+
+    private ByteBuffer allocate(int size){
+        return this.direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+}
@@ -0,0 +1,141 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.protocol.Packet;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Protocol socket backed by a non-blocking DatagramChannel
+ *
+ * - Datagrams are read straight into the pages of the arena, no byte array is allocated and nothing is copied per datagram
+ * - Heap pages are filled through a JDK internal direct buffer, direct pages avoid that copy
+ */
+public class ChannelProtocolSocket extends ProtocolSocket {
+    private DatagramChannel channel;
+
+    private Selector selector;
+
+    public ChannelProtocolSocket(SocketAddress bindAddress, ChildNetworkManager networkManager) throws SocketException {
+        this(bindAddress, networkManager, false);
+    }
+
+    public ChannelProtocolSocket(SocketAddress bindAddress, ChildNetworkManager networkManager, boolean directBuffers) throws SocketException {
+        this(bindAddress, networkManager, directBuffers, false);
+    }
+
+    /**
+     * @param bindAddress The address binding on
+     * @param networkManager Network manager of the owner interface
+     * @param directBuffers Whether the receive pool uses direct buffers
+     * @param reusePort Set SO_REUSEPORT so several sockets can bind the same port
+     * @throws SocketException
+     */
+    public ChannelProtocolSocket(SocketAddress bindAddress, ChildNetworkManager networkManager, boolean directBuffers, boolean reusePort) throws SocketException {
+        super(networkManager, new BufferArena(directBuffers));
+        try{
+            this.channel = DatagramChannel.open();
+            if(reusePort){
+                SocketOption<Boolean> option = ChannelProtocolSocket.getReusePortOption();
+                if(option == null || !this.channel.supportedOptions().contains(option)){
+                    throw new SocketException("SO_REUSEPORT is not supported on this platform");
+                }
+                this.channel.setOption(option, true);
+            }
+            this.channel.setOption(StandardSocketOptions.SO_SNDBUF, Packet.MAX_SIZE);
+            this.channel.setOption(StandardSocketOptions.SO_RCVBUF, Packet.MAX_SIZE);
+            this.channel.bind(bindAddress);
+            this.channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.channel.register(this.selector, SelectionKey.OP_READ);
+        }catch (SocketException e){
+            this.closeEndpoint();
+            throw e;
+        }catch (IOException e){
+            this.closeEndpoint();
+            SocketException exception = new SocketException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+        this.startThread();
+    }
+
+    /**
+     * SO_REUSEPORT is only exposed from Java 9 onwards
+     *
+     * @return The option or null if the runtime does not know it
+     */
+    @SuppressWarnings("unchecked")
+    public static SocketOption<Boolean> getReusePortOption(){
+        try{
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+    @Override
+    protected void receiveDatagrams() throws IOException {
+        this.selector.select();
+        this.selector.selectedKeys().clear();
+        ReceivedPacket packet;
+        while((packet = this.getArena().receive(this.channel)) != null){
+            if(this.acceptDatagram(packet.getSendAddress(), packet.getLength())){
+                this.queueReceived(packet);
+            }else{
+                packet.release();
+            }
+        }
+    }
+
+    @Override
+    protected void send(DatagramPacket packet) throws IOException {
+        this.channel.send(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()), packet.getSocketAddress());
+    }
+
+    @Override
+    protected void closeEndpoint(){
+        try{
+            if(this.selector != null){
+                this.selector.close();
+            }
+            if(this.channel != null){
+                this.channel.close();
+            }
+        }catch (IOException ignore){}
+    }
+
+    @Override
+    public DatagramChannel getChannel(){
+        return this.channel;
+    }
+
+    @Override
+    public boolean isBound(){
+        return this.channel.socket().isBound();
+    }
+
+    @Override
+    public boolean isClosed(){
+        return !this.channel.isOpen();
+    }
+
+    @Override
+    public InetAddress getLocalAddress(){
+        return this.channel.socket().getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort(){
+        return this.channel.socket().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress(){
+        return this.channel.socket().getLocalSocketAddress();
+    }
+}
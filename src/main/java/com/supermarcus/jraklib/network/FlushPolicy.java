@@ -0,0 +1,16 @@
+package com.supermarcus.jraklib.network;
+
+/**
+ * When queued datagrams leave the socket
+ */
+public enum FlushPolicy {
+    /**
+     * Datagrams are queued and flushed once per interface tick
+     */
+    PER_TICK,
+
+    /**
+     * Datagrams are flushed by the writing thread as soon as they are queued
+     */
+    IMMEDIATE
+}
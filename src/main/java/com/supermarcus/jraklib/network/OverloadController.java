@@ -0,0 +1,160 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
+
+/**
+ * Adapts the work an interface takes on per tick to how long its ticks take
+ *
+ * - The receive budget grows by a step while ticks use all of it in time, and is halved by a tick that runs late
+ * - The session update budget is halved by a late tick too and grows back to a whole tick while ticks are in time,
+ *   the update workers stop at it and the sessions they did not reach come first on the next tick
+ * - Late ticks raise the shedding level, unconnected pings are dropped first and new connection attempts next
+ * - Datagrams of connected sessions are never shed, they wait in the transport when the budget is spent
+ * - Only used by the interface thread, the getters may be called from any thread
+ */
+public class OverloadController {
+    public static final int MIN_PACKET_BUDGET = 64;
+
+    public static final int MAX_PACKET_BUDGET = 8192;
+
+    /**
+     * Budget added after a tick which used all of its budget in time
+     */
+    public static final int BUDGET_STEP = 32;
+
+    /**
+     * The session update budget does not shrink below this fraction of a tick, sessions still need their ACKs sent
+     */
+    public static final int MIN_UPDATE_SHARE = 4;
+
+    /**
+     * Fraction of a tick added to the session update budget after a tick in time
+     */
+    public static final int UPDATE_STEP_SHARE = 8;
+
+    /**
+     * Unconnected pings are dropped from this level on
+     */
+    public static final int SHED_PINGS = 1;
+
+    /**
+     * New connection attempts are dropped from this level on
+     */
+    public static final int SHED_CONNECTIONS = 2;
+
+    /**
+     * Shortest time between two overload reports
+     */
+    public static final long REPORT_PERIOD = 1000;
+
+    private final long targetNanos;
+
+    volatile private int packetBudget = RakLibInterface.MAX_PACKET_PER_TICK;
+
+    volatile private long updateBudgetNanos;
+
+    volatile private int shedLevel = 0;
+
+    volatile private long shedPackets = 0L;
+
+    volatile private long lastTickNanos = 0L;
+
+    private long worstTickNanos = 0L;
+
+    private long lastReport = 0L;
+
+    /**
+     * @param targetNanos Time a tick is expected to take at most
+     */
+    public OverloadController(long targetNanos){
+        this.targetNanos = targetNanos;
+        this.updateBudgetNanos = targetNanos;
+    }
+
+    /**
+     * Account a finished tick
+     *
+     * @param tickNanos Time the tick took
+     * @param saturated Whether the tick spent its whole receive budget
+     * @param millis Current time
+     * @return Longest tick in milliseconds to report as overloaded, or -1 if there is nothing to report yet
+     */
+    public long onTick(long tickNanos, boolean saturated, long millis){
+        this.lastTickNanos = tickNanos;
+        if(tickNanos > this.targetNanos){
+            this.packetBudget = Math.max(OverloadController.MIN_PACKET_BUDGET, this.packetBudget / 2);
+            this.updateBudgetNanos = Math.max(this.targetNanos / OverloadController.MIN_UPDATE_SHARE, this.updateBudgetNanos / 2);
+            this.shedLevel = Math.min(OverloadController.SHED_CONNECTIONS, this.shedLevel + 1);
+            this.worstTickNanos = Math.max(this.worstTickNanos, tickNanos);
+            if((millis - this.lastReport) >= OverloadController.REPORT_PERIOD){
+                long worst = this.worstTickNanos / (1000 * 1000L);
+                this.worstTickNanos = 0L;
+                this.lastReport = millis;
+                return worst;
+            }
+            return -1L;
+        }
+        this.updateBudgetNanos = Math.min(this.targetNanos, this.updateBudgetNanos + (this.targetNanos / OverloadController.UPDATE_STEP_SHARE));
+        if(tickNanos < (this.targetNanos / 2)){
+            this.shedLevel = Math.max(0, this.shedLevel - 1);
+        }
+        if(saturated){
+            this.packetBudget = Math.min(OverloadController.MAX_PACKET_BUDGET, this.packetBudget + OverloadController.BUDGET_STEP);
+        }
+        return -1L;
+    }
+
+    /**
+     * @param identifier Packet received
+     * @return Whether the packet is dropped at the current shedding level
+     */
+    public boolean shouldShed(PacketInfo identifier){
+        int level = this.shedLevel;
+        if(level == 0){
+            return false;
+        }
+        switch(identifier){
+            case UNCONNECTED_PING:
+            case UNCONNECTED_PING_OPEN_CONNECTIONS:
+                break;
+            case OPEN_CONNECTION_REQUEST_1:
+                if(level < OverloadController.SHED_CONNECTIONS){
+                    return false;
+                }
+                break;
+            default:
+                return false;
+        }
+        ++this.shedPackets;
+        return true;
+    }
+
+    /**
+     * @return Datagrams handled per tick at most
+     */
+    public int getPacketBudget(){
+        return this.packetBudget;
+    }
+
+    /**
+     * @return Time the session updates of a tick may take
+     */
+    public long getUpdateBudgetNanos(){
+        return this.updateBudgetNanos;
+    }
+
+    public int getShedLevel(){
+        return this.shedLevel;
+    }
+
+    /**
+     * @return Datagrams dropped by shedding so far
+     */
+    public long getShedPackets(){
+        return this.shedPackets;
+    }
+
+    public long getLastTickNanos(){
+        return this.lastTickNanos;
+    }
+}
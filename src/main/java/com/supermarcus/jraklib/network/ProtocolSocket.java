@@ -1,27 +1,75 @@
 package com.supermarcus.jraklib.network;
 
 import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.network.capture.CaptureRecorder;
 import com.supermarcus.jraklib.protocol.Packet;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.*;
+import java.nio.channels.DatagramChannel;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Consumer;
 
 /**
  * UDP Socket for Minecraft: Pocket Edition network protocol
+ *
+ * - Default transport of an interface
+ * - Wraps a blocking DatagramSocket, subclasses bringing their own endpoint do not open one
  */
-public class ProtocolSocket extends DatagramSocket {
+public class ProtocolSocket implements Transport {
+    /**
+     * Largest payload a single UDP datagram can carry
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
     private ChildNetworkManager manager;
 
-    private SocketSendReceiveThread thread = new SocketSendReceiveThread();
+    /**
+     * Blocking endpoint, null if a subclass brings its own
+     */
+    private DatagramSocket socket = null;
+
+    volatile private FlushPolicy flushPolicy = FlushPolicy.PER_TICK;
+
+    private SendQueue sendQueue = new SendQueue(SendQueue.RING_CAPACITY);
+
+    volatile private CaptureRecorder recorder = null;
+
+    volatile private Runnable receiveListener = null;
+
+    private SocketSendReceiveThread thread = null;
+
+    /**
+     * Datagram pointed at the arena page by every receive
+     */
+    private DatagramPacket receiveCache = null;
+
+    private BufferArena arena = null;
 
     public ProtocolSocket(SocketAddress bindAddress, ChildNetworkManager networkManager) throws SocketException {
-        super(bindAddress);
+        this.socket = new DatagramSocket(bindAddress);
         this.manager = networkManager;
-        this.setSendBufferSize(Packet.MAX_SIZE);
-        this.setReceiveBufferSize(Packet.MAX_SIZE);
+        this.receiveCache = new DatagramPacket(new byte[0], 0);
+        this.arena = new BufferArena(false);
+        this.socket.setSendBufferSize(Packet.MAX_SIZE);
+        this.socket.setReceiveBufferSize(Packet.MAX_SIZE);
+        this.startThread();
+    }
+
+    /**
+     * Create a socket without an endpoint, the subclass binds its own one and then calls {@link #startThread()}
+     *
+     * @param networkManager Network manager of the owner interface
+     * @param arena Arena received datagrams are stored in
+     */
+    protected ProtocolSocket(ChildNetworkManager networkManager, BufferArena arena){
+        this.manager = networkManager;
+        this.arena = arena;
+    }
+
+    protected void startThread(){
+        this.thread = new SocketSendReceiveThread();
         this.thread.start();
     }
 
@@ -31,7 +79,10 @@ public class ProtocolSocket extends DatagramSocket {
      * @param packet Packet to send
      */
     public void writePacket(QueuePacket packet){
-        this.thread.send(packet);
+        this.sendQueue.offer(packet, this::flush);
+        if(this.flushPolicy == FlushPolicy.IMMEDIATE){
+            this.flush();
+        }
     }
 
     /**
@@ -62,14 +113,59 @@ public class ProtocolSocket extends DatagramSocket {
     /**
      * To receive a packet
      *
+     * The packet must be released once it has been processed
+     *
      * @return Packet received
      */
     public ReceivedPacket readPacket(){
         return this.thread.receive();
     }
 
+    public void setReceiveListener(Runnable listener){
+        this.receiveListener = listener;
+    }
+
+    /**
+     * Send everything queued, higher priorities first and FIFO within a priority
+     */
     public void flush(){
-        this.thread.flush();
+        this.sendQueue.drain(this.thread.sender);
+    }
+
+    public FlushPolicy getFlushPolicy(){
+        return this.flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * @return Datagrams dropped because their send ring stayed full
+     */
+    public long getDroppedPackets(){
+        return this.sendQueue.getDroppedPackets();
+    }
+
+    /**
+     * @return Times a writer found its send ring full and had to flush it
+     */
+    public long getBackpressureCount(){
+        return this.sendQueue.getBackpressureCount();
+    }
+
+    public int getQueuedPackets(){
+        return this.sendQueue.size();
+    }
+
+    /**
+     * Send a datagram through the endpoint
+     *
+     * @param packet Datagram to send
+     * @throws IOException
+     */
+    protected void send(DatagramPacket packet) throws IOException {
+        this.socket.send(packet);
     }
 
     /**
@@ -83,44 +179,142 @@ public class ProtocolSocket extends DatagramSocket {
         this.manager.onSocketSend(packet.getLength());
     }
 
+    /**
+     * Block until at least one datagram arrives and queue everything that has been read
+     *
+     * Called from the receive thread only
+     *
+     * @throws IOException
+     */
+    protected void receiveDatagrams() throws IOException {
+        ReceivedPacket packet = this.arena.receive(this.socket, this.receiveCache);
+        if(this.acceptDatagram(packet.getSendAddress(), packet.getLength())){
+            this.queueReceived(packet);
+        }else{
+            packet.release();
+        }
+    }
+
+    /**
+     * Check the source of a datagram and count the traffic
+     *
+     * @param from Source address
+     * @param length Length of the datagram
+     * @return Whether the datagram should be passed to the interface
+     */
+    protected boolean acceptDatagram(InetSocketAddress from, int length){
+        if((length > 0) && (!this.manager.isAddressBlocked(from.getAddress()))){
+            this.manager.onSocketRead(length, from);
+            return true;
+        }
+        return false;
+    }
+
+    protected void queueReceived(ReceivedPacket packet){
+        CaptureRecorder recorder = this.recorder;
+        if(recorder != null){
+            recorder.record(packet.getSendAddress(), packet.getData());
+        }
+        this.thread.receiveBuffer.add(packet);
+        Runnable listener = this.receiveListener;
+        if(listener != null){
+            listener.run();
+        }
+    }
+
+    protected ChildNetworkManager getNetworkManager(){
+        return this.manager;
+    }
+
+    public BufferArena getArena(){
+        return this.arena;
+    }
+
+    public CaptureRecorder getCaptureRecorder(){
+        return this.recorder;
+    }
+
+    /**
+     * Record every datagram passed to the interface, null stops recording
+     *
+     * @param recorder Recorder to append to
+     */
+    public void setCaptureRecorder(CaptureRecorder recorder){
+        this.recorder = recorder;
+    }
+
     public boolean isAlive(){
         return !this.isClosed() && this.isBound();
     }
 
+    public boolean isBound(){
+        return this.socket.isBound();
+    }
+
+    public boolean isClosed(){
+        return this.socket.isClosed();
+    }
+
+    public InetAddress getLocalAddress(){
+        return this.socket.getLocalAddress();
+    }
+
+    public int getLocalPort(){
+        return this.socket.getLocalPort();
+    }
+
+    public SocketAddress getLocalSocketAddress(){
+        return this.socket.getLocalSocketAddress();
+    }
+
+    /**
+     * @return Channel of the endpoint, or null if it is a plain DatagramSocket
+     */
+    public DatagramChannel getChannel(){
+        return null;
+    }
+
     public void close(){
-        this.thread.shutdown();
-        super.close();
+        SocketSendReceiveThread thread = this.thread;
+        if(thread != null){
+            thread.running = false;
+        }
+        this.closeEndpoint();
+        if(thread != null && thread != Thread.currentThread()){
+            try {
+                thread.join();
+            } catch (InterruptedException ignore) {}
+        }
+    }
+
+    /**
+     * Release the underlying endpoint, this also wakes up the blocked receive thread
+     */
+    protected void closeEndpoint(){
+        if(this.socket != null){
+            this.socket.close();
+        }
     }
 
     private class SocketSendReceiveThread extends Thread{
         private ConcurrentLinkedQueue<ReceivedPacket> receiveBuffer = new ConcurrentLinkedQueue<>();
 
-        private PriorityBlockingQueue<QueuePacket> sendBuffer = new PriorityBlockingQueue<>();
+        private Consumer<QueuePacket> sender = packet -> {
+            try{
+                ProtocolSocket.this.writePacket(packet.getPacket());
+            }catch (Exception ignore){}
+        };
 
-        private boolean running = true;
+        volatile private boolean running = true;
 
         public SocketSendReceiveThread(){
             this.setName("RakLib Protocol Socket - " + ProtocolSocket.this.getLocalSocketAddress() + ":" + ProtocolSocket.this.getLocalPort());
         }
 
-        public void flush(){
-            try{
-                while (!this.sendBuffer.isEmpty()){
-                    QueuePacket packet = this.sendBuffer.poll();
-                    ProtocolSocket.this.writePacket(packet.getPacket());
-                }
-            }catch (Exception ignore){}
-        }
-
         public void run(){
             while(this.running){
                 try{
-                    DatagramPacket dPacket = new DatagramPacket(new byte[Packet.MAX_SIZE], Packet.MAX_SIZE);
-                    ProtocolSocket.this.receive(dPacket);
-                    if((dPacket.getLength() > 0) && (!ProtocolSocket.this.manager.isAddressBlocked(dPacket.getAddress()))){
-                        manager.onSocketRead(dPacket.getLength(), (InetSocketAddress) dPacket.getSocketAddress());
-                        this.receiveBuffer.add(new ReceivedPacket(dPacket));
-                    }
+                    ProtocolSocket.this.receiveDatagrams();
                 }catch (Exception ignore){}
             }
         }
@@ -128,17 +322,5 @@ public class ProtocolSocket extends DatagramSocket {
         public ReceivedPacket receive(){
             return receiveBuffer.poll();
         }
-
-        public void send(QueuePacket packet){
-            this.sendBuffer.offer(packet);
-        }
-
-        public void shutdown(){
-            this.running = false;
-            try {
-                this.notifyAll();
-                this.join();
-            } catch (InterruptedException ignore) {}
-        }
     }
 }
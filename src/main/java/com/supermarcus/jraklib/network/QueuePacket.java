@@ -24,4 +24,8 @@ public class QueuePacket implements Comparable {
     public DatagramPacket getPacket() {
         return packet;
     }
+
+    public SendPriority getPriority() {
+        return priority;
+    }
 }
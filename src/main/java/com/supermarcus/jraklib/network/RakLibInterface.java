@@ -9,10 +9,17 @@ import com.supermarcus.jraklib.lang.RawPacket;
 import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
 import com.supermarcus.jraklib.protocol.raklib.UNCONNECTED_PING;
 import com.supermarcus.jraklib.protocol.raklib.UNCONNECTED_PONG;
+import com.supermarcus.jraklib.protocol.raklib.data.DataPacket;
+import com.supermarcus.jraklib.network.congestion.CongestionControllerFactory;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Thread interface
@@ -24,13 +31,28 @@ public class RakLibInterface extends Thread{
 
     public static final int MAX_PACKET_PER_TICK = 500;
 
-    private ProtocolSocket socket;
+    /**
+     * Time the event-driven loop spends on received datagrams before it runs timers again
+     */
+    public static final long RECEIVE_BUDGET_NANOS = 5 * 1000 * 1000L;
+
+    /**
+     * Datagrams handled between two clock reads of the receive budget
+     */
+    public static final int RECEIVE_BUDGET_CHECK = 64;
+
+    /**
+     * Difference between wall clock and monotonic clock progress reported as a time warning, in milliseconds
+     */
+    public static final long TIME_WARNING_THRESHOLD = 1000;
+
+    private Transport socket;
 
     private SessionManager sessionManager;
 
     private boolean running = false;
 
-    private boolean isShutdown = true;
+    volatile private boolean isShutdown = true;
 
     private long startTime = 0L;
 
@@ -40,39 +62,109 @@ public class RakLibInterface extends Thread{
 
     private ChildNetworkManager networkManager;
 
+    private ShardGroup shardGroup = null;
+
+    private int shardIndex = 0;
+
+    private boolean eventDriven;
+
+    private ReceiveSignal signal = new ReceiveSignal();
+
+    /**
+     * Sessions with datagrams waiting for their pacer
+     */
+    private Set<Session> pacedSessions = ConcurrentHashMap.newKeySet();
+
+    private SessionUpdatePool.Stripes updateStripes = null;
+
+    /**
+     * Deadlines of the sessions, null when every session is updated on every tick
+     */
+    private TimerWheel timerWheel = null;
+
+    /**
+     * Creates the congestion controllers of new sessions, null to only limit retransmits per tick
+     */
+    volatile private CongestionControllerFactory congestionControl;
+
+    private OverloadController overload = new OverloadController(RakLibInterface.NORMAL_TICK * 1000 * 1000L);
+
+    private long clockMillis = 0L;
+
+    private long clockNanos = 0L;
+
+    /**
+     * Sessions which received datagrams in the current batch, only used in event-driven mode
+     */
+    private HashSet<Session> receivedSessions = null;
+
     public RakLibInterface(InetSocketAddress serverAddress, SessionManager manager, int serverId) throws SocketException {
+        this(serverAddress, manager, serverId, null, 0);
+    }
+
+    /**
+     * Create an interface, sharded interfaces bind the same port with SO_REUSEPORT
+     *
+     * @param serverAddress The address binding on
+     * @param manager Owner session manager
+     * @param serverId Interface id
+     * @param shardGroup Group of shards sharing the port, or null for a standalone interface
+     * @param shardIndex Index of this interface in the group
+     * @throws SocketException
+     */
+    public RakLibInterface(InetSocketAddress serverAddress, SessionManager manager, int serverId, ShardGroup shardGroup, int shardIndex) throws SocketException {
         this.networkManager = new ChildNetworkManager(manager.getNetworkManager(), this);
-        this.socket = new ProtocolSocket(serverAddress, this.getNetworkManager());
+        if(manager.getTransportFactory() != null){
+            this.socket = manager.getTransportFactory().open(serverAddress, this.getNetworkManager(), shardGroup != null);
+        }else if(shardGroup != null){
+            this.socket = new ChannelProtocolSocket(serverAddress, this.getNetworkManager(), manager.isDirectReceiveBuffers(), true);
+        }else if(manager.isChannelTransport()){
+            this.socket = new ChannelProtocolSocket(serverAddress, this.getNetworkManager(), manager.isDirectReceiveBuffers());
+        }else{
+            this.socket = new ProtocolSocket(serverAddress, this.getNetworkManager());
+        }
         this.sessionManager = manager;
+        this.eventDriven = manager.isEventDriven();
+        if(manager.isTimerWheel()){
+            this.timerWheel = new TimerWheel(RakLibInterface.NORMAL_TICK);
+        }
+        this.congestionControl = manager.getCongestionControl();
         this.serverId = serverId;
-        this.setName("RakLib - Interface Thread");
+        this.shardGroup = shardGroup;
+        this.shardIndex = shardIndex;
+        if(shardGroup != null){
+            shardGroup.setShard(shardIndex, this);
+            this.setName("RakLib - Interface Thread #" + shardIndex);
+        }else{
+            this.setName("RakLib - Interface Thread");
+        }
+        this.isShutdown = false;//Set before start(), a shutdown() called before run() must not be lost
         this.start();
     }
 
     public void run(){
         this.running = true;
-        this.isShutdown = false;
         synchronized (this){
             this.startTime = System.currentTimeMillis();
         }
         this.getSessionManager().queueMessage(new InterfaceStartMessage(this.getStartTimeMillis(), this));
         try{
-            while(!this.isShutdown){
-                long tickStart = System.currentTimeMillis();
+            if(this.eventDriven){
+                this.runEventDriven();
+            }else{
+                while(!this.isShutdown){
+                    long tickStart = System.currentTimeMillis();
 
-                ++this.tickCounter;
+                    ++this.tickCounter;
 
-                if(tickStart < this.startTime){//what???
-                    synchronized (this){
-                        this.startTime = tickStart;
-                    }
-                }
+                    this.checkStartTime(tickStart);
 
-                this.onTick();
+                    this.onTick();
 
-                try{
-                    Thread.sleep(tickStart + RakLibInterface.NORMAL_TICK - System.currentTimeMillis());
-                }catch (Exception ignore){}
+                    try{
+                        Thread.sleep(tickStart + RakLibInterface.NORMAL_TICK - System.currentTimeMillis());
+                    }catch (Exception ignore){}
+                }
             }
             this.getSocket().close();
         }catch (Throwable t){
@@ -82,64 +174,346 @@ public class RakLibInterface extends Thread{
         this.running = false;
     }
 
+    /**
+     * Event-driven loop
+     *
+     * - Parks until the transport queues a datagram or the next timer is due
+     * - Handles received datagrams for at most RECEIVE_BUDGET_NANOS, then updates the sessions which received them
+     * - Sessions are updated every NORMAL_TICK milliseconds and network statistics every NETWORK_CALCULATE_PERIOD ticks
+     * - Paced sessions are flushed as soon as their pacer allows the next datagram
+     * - A tick is as long as it finishes after it was due, which feeds the overload controller
+     */
+    private void runEventDriven(){
+        final long tickNanos = RakLibInterface.NORMAL_TICK * 1000 * 1000L;
+        final long networkNanos = tickNanos * RakLibInterface.NETWORK_CALCULATE_PERIOD;
+        this.receivedSessions = new HashSet<>();
+        this.getSocket().setReceiveListener(this.signal);
+        long nextTick = System.nanoTime();
+        long nextNetworkUpdate = nextTick + networkNanos;
+        boolean saturated = false;
+        try{
+            while(!this.isShutdown){
+                boolean exhausted = this.receiveBatch(RakLibInterface.RECEIVE_BUDGET_NANOS, this.overload.getPacketBudget());
+                saturated |= exhausted;
+
+                long millis = System.currentTimeMillis();
+                this.checkStartTime(millis);
+                if(!this.receivedSessions.isEmpty()){
+                    for(Session session : this.receivedSessions){
+                        session.flush(millis);
+                        if(this.timerWheel != null){
+                            this.timerWheel.schedule(session, session.getNextDeadline(millis));
+                        }
+                    }
+                    this.receivedSessions.clear();
+                }
+
+                long now = System.nanoTime();
+                if((now - nextTick) >= 0){
+                    ++this.tickCounter;
+                    long due = nextTick;
+                    nextTick += tickNanos;
+                    if((now - nextTick) >= 0){//Fell behind, do not run the missed ticks back to back
+                        nextTick = now + tickNanos;
+                    }
+                    this.updateSessions(millis, this.getUpdateDeadline(nextTick));
+                    this.reportTick(System.nanoTime() - due, saturated, millis);
+                    saturated = false;
+                }
+                if((now - nextNetworkUpdate) >= 0){
+                    this.getNetworkManager().doUpdate(millis);
+                    nextNetworkUpdate = now + networkNanos;
+                }
+
+                long wakeup = nextTick;
+                if(!this.pacedSessions.isEmpty()){
+                    long pacedNanos = this.flushPacedSessions(System.nanoTime());
+                    if((pacedNanos >= 0) && ((pacedNanos - wakeup) < 0)){
+                        wakeup = pacedNanos;
+                    }
+                }
+
+                this.getSocket().flush();
+
+                if(!exhausted){
+                    this.signal.await(wakeup - System.nanoTime());
+                }
+            }
+        }finally{
+            this.getSocket().setReceiveListener(null);
+        }
+    }
+
+    /**
+     * Handle received datagrams until none is left or the budget is spent
+     *
+     * @param budgetNanos Time allowed
+     * @param maxPackets Datagrams allowed
+     * @return True if the budget was spent with datagrams possibly left
+     */
+    private boolean receiveBatch(long budgetNanos, int maxPackets){
+        long deadline = System.nanoTime() + budgetNanos;
+        int count = 0;
+        while(this.receivePacket()){
+            ++count;
+            if((count >= maxPackets) || (((count % RakLibInterface.RECEIVE_BUDGET_CHECK) == 0) && ((System.nanoTime() - deadline) >= 0))){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the sessions of this interface, only the due ones when the timer wheel is used
+     *
+     * @param millis Current time
+     * @param deadlineNanos System.nanoTime() the update workers stop at
+     */
+    private void updateSessions(long millis, long deadlineNanos){
+        SessionManager.SessionMap map = this.getSessionManager().getSessionMap();
+        if(this.timerWheel == null){
+            map.update(this, millis, deadlineNanos);
+            return;
+        }
+        ArrayList<Session> sessions = this.timerWheel.expire(millis);
+        if(sessions.isEmpty()){
+            return;
+        }
+        sessions.removeIf(session -> map.get(session.getAddress()) != session);//Closed sessions are left behind
+        SessionUpdatePool pool = this.getSessionManager().getUpdatePool();
+        if(pool != null){
+            pool.update(this.getUpdateStripes(pool), sessions, millis, deadlineNanos);
+        }else{
+            for(Session session : sessions){
+                session.update(millis);
+            }
+        }
+        for(Session session : sessions){
+            this.timerWheel.schedule(session, session.getNextDeadline(millis));
+        }
+    }
+
+    /**
+     * Update a session on the next tick, may be called from any thread
+     *
+     * @param session Session with work queued
+     */
+    public void requestUpdate(Session session){
+        if(this.timerWheel != null){
+            this.timerWheel.wakeup(session);
+        }
+    }
+
+    /**
+     * @return Timer wheel of the sessions, or null if every session is updated on every tick
+     */
+    public TimerWheel getTimerWheel(){
+        return this.timerWheel;
+    }
+
+    /**
+     * @param tickEndNanos System.nanoTime() the tick is over
+     * @return System.nanoTime() the session updates stop at, the update budget from now but not past the tick
+     */
+    private long getUpdateDeadline(long tickEndNanos){
+        long deadline = System.nanoTime() + this.overload.getUpdateBudgetNanos();
+        return ((deadline - tickEndNanos) < 0) ? deadline : tickEndNanos;
+    }
+
+    /**
+     * Pass a finished tick to the overload controller and report it if it ran late
+     *
+     * @param tickNanos Time the tick took
+     * @param saturated Whether the receive budget was spent during the tick
+     * @param millis Current time
+     */
+    private void reportTick(long tickNanos, boolean saturated, long millis){
+        long overloadedMillis = this.overload.onTick(tickNanos, saturated, millis);
+        if(overloadedMillis >= 0){
+            this.getSessionManager().queueMessage(new ServerOverloadedMessage(overloadedMillis, this));
+        }
+    }
+
+    /**
+     * @param nanos Current System.nanoTime()
+     * @return Time the next paced datagram is due, or -1 if none is waiting
+     */
+    private long flushPacedSessions(long nanos){
+        long due = -1L;
+        for(Session session : this.pacedSessions.toArray(new Session[this.pacedSessions.size()])){
+            this.pacedSessions.remove(session);//Flushing may schedule it again
+            long delay = session.getReliableManager().flushPaced(nanos);
+            if((delay >= 0) && ((due < 0) || ((nanos + delay - due) < 0))){
+                due = nanos + delay;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Flush a paced session again when its pacer allows, only used by event-driven interfaces
+     *
+     * @param session Session with datagrams waiting
+     */
+    public void schedulePacing(Session session){
+        if(this.eventDriven && this.pacedSessions.add(session) && (Thread.currentThread() != this)){
+            this.wakeup();
+        }
+    }
+
+    /**
+     * Get the update state of this interface for a pool, only called from the interface thread
+     *
+     * @param pool Update pool of the session manager
+     * @return Stripes of this interface
+     */
+    public SessionUpdatePool.Stripes getUpdateStripes(SessionUpdatePool pool){
+        if((this.updateStripes == null) || (this.updateStripes.getPool() != pool)){
+            this.updateStripes = pool.newStripes();
+        }
+        return this.updateStripes;
+    }
+
+    /**
+     * @return Whether the interface runs the event-driven loop
+     */
+    public boolean isEventDriven(){
+        return this.eventDriven;
+    }
+
+    public CongestionControllerFactory getCongestionControl(){
+        return this.congestionControl;
+    }
+
+    /**
+     * Select the congestion control of sessions created on this interface after this call
+     *
+     * @param congestionControl Factory of the controllers, or null to only limit retransmits per tick
+     */
+    public void setCongestionControl(CongestionControllerFactory congestionControl){
+        this.congestionControl = congestionControl;
+    }
+
+    /**
+     * @return Overload controller of this interface
+     */
+    public OverloadController getOverloadController(){
+        return this.overload;
+    }
+
+    private void checkStartTime(long millis){
+        if(millis < this.startTime){//what???
+            synchronized (this){
+                this.startTime = millis;
+            }
+        }
+        long nanos = System.nanoTime();
+        if(this.clockNanos != 0L){
+            long drift = (millis - this.clockMillis) - ((nanos - this.clockNanos) / (1000 * 1000L));
+            if(Math.abs(drift) >= RakLibInterface.TIME_WARNING_THRESHOLD){//Wall clock was set
+                this.getSessionManager().queueMessage(new TimeWarningMessage(this));
+            }
+        }
+        this.clockMillis = millis;
+        this.clockNanos = nanos;
+    }
+
+    /**
+     * Wake the interface thread up in event-driven mode, used after handing a datagram to this interface
+     */
+    public void wakeup(){
+        this.signal.signal();
+    }
+
     public boolean receivePacket(){
-        ReceivedPacket packet = this.getSocket().readPacket();
+        ReceivedPacket packet = this.readPacket();
         if(packet != null){
-            byte[] buffer = packet.getRawData();
-            PacketInfo identifier = PacketInfo.getById(buffer[0]);
-            if(identifier != null){
-                try{
-                    Packet wrappedPacket = identifier.wrap(buffer);
-                    wrappedPacket.decode();
-                    if(identifier == PacketInfo.UNCONNECTED_PING){//No need to pass to a session
-                        UNCONNECTED_PONG pong = new UNCONNECTED_PONG();
-                        pong.setServerName(getSessionManager().getMinecraftServerProtocolNameString());
-                        pong.setServerID(getSessionManager().getServerId());
-                        pong.setPingID(((UNCONNECTED_PING) wrappedPacket).getPingID());
-                        pong.encode();
-                        this.getSocket().writePacket(pong, packet.getSendAddress());
-                    }else{
-                        this.getSessionManager().getSessionMap().getSession(packet.getSendAddress(), this).handlePacket(wrappedPacket);
+            if(this.shardGroup != null){
+                int owner = this.shardGroup.shardOf(packet.getSendAddress());
+                if(owner != this.shardIndex){
+                    this.shardGroup.handoff(owner, packet);
+                    return true;
+                }
+            }
+            try{
+                ByteBuffer buffer = packet.getData();
+                PacketInfo identifier = PacketInfo.getById(buffer.get(buffer.position()));
+                if((identifier != null) && this.overload.shouldShed(identifier)){
+                    return true;
+                }
+                if(identifier != null){
+                    Packet wrappedPacket = null;
+                    try{
+                        wrappedPacket = identifier.wrap(buffer, this.getSessionManager().isPooledPayloads() ? packet.getPooledBuffer() : null);
+                        wrappedPacket.decode();
+                        if(identifier == PacketInfo.UNCONNECTED_PING){//No need to pass to a session
+                            UNCONNECTED_PONG pong = new UNCONNECTED_PONG();
+                            pong.setServerName(getSessionManager().getMinecraftServerProtocolNameString());
+                            pong.setServerID(getSessionManager().getServerId());
+                            pong.setPingID(((UNCONNECTED_PING) wrappedPacket).getPingID());
+                            pong.encode();
+                            this.getSocket().writePacket(pong, packet.getSendAddress());
+                        }else{
+                            Session session = this.getSessionManager().getSessionMap().getSession(packet.getSendAddress(), this);
+                            session.handlePacket(wrappedPacket);
+                            if(this.receivedSessions != null){
+                                this.receivedSessions.add(session);
+                            }else if(this.timerWheel != null){
+                                this.timerWheel.schedule(session, 0L);
+                            }
+                        }
+                    }catch (Exception e){
+                        if(wrappedPacket instanceof DataPacket){
+                            ((DataPacket) wrappedPacket).releasePackets();
+                        }
+                        e.printStackTrace();//TODO
                     }
-                }catch (Exception e){
-                    e.printStackTrace();//TODO
+                }else{
+                    this.getSessionManager().queueRaw(new RawPacket(packet.getRawData(), packet.getSendAddress(), this));
                 }
-            }else{
-                this.getSessionManager().queueRaw(new RawPacket(packet.getRawData(), packet.getSendAddress(), this));
+            }finally{
+                packet.release();
             }
             return true;
         }
         return false;
     }
 
+    private ReceivedPacket readPacket(){
+        if(this.shardGroup != null){
+            ReceivedPacket packet = this.shardGroup.pollHandoff(this.shardIndex);
+            if(packet != null){
+                return packet;
+            }
+        }
+        return this.getSocket().readPacket();
+    }
+
     /**
      * Main tick here
      */
     public void onTick() {
-        int max = RakLibInterface.MAX_PACKET_PER_TICK;
+        int max = this.overload.getPacketBudget();
         long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + (RakLibInterface.NORMAL_TICK * 1000 * 1000L);
 
         while((max > 0) && this.receivePacket()){
-            this.getSocket().flush();
             --max;
         }
+        this.updateSessions(startMillis, this.getUpdateDeadline(deadlineNanos));
         this.getSocket().flush();
-        this.getSessionManager().getSessionMap().update(this, startMillis);
 
         if((this.getTick() % RakLibInterface.NETWORK_CALCULATE_PERIOD) == 0){
             this.getNetworkManager().doUpdate(System.currentTimeMillis());
         }
 
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        this.reportTick(System.nanoTime() - startNanos, max == 0, startMillis);
     }
 
     public void onAddressBlocked(InetAddress address, long millis){
         this.getSessionManager().queueMessage(new NetworkBlockedMessage(address, millis, this));
-        for(Session s : this.getSessionManager().getSessionMap().findSessions(this)){
+        for(Session s : this.getSessionManager().getSessionMap().getSessions(this)){
             if(s.getAddress().getAddress().equals(address)){
                 s.close(SessionCloseMessage.Reason.NETWOEK_BLOCKED);
             }
@@ -152,17 +526,29 @@ public class RakLibInterface extends Thread{
 
     public void shutdown(){
         this.isShutdown = true;
+        this.wakeup();
     }
 
     public int getServerId(){
         return serverId;
     }
 
+    /**
+     * @return The group this interface belongs to, or null if it is not sharded
+     */
+    public ShardGroup getShardGroup(){
+        return this.shardGroup;
+    }
+
+    public int getShardIndex(){
+        return this.shardIndex;
+    }
+
     public SessionManager getSessionManager(){
         return this.sessionManager;
     }
 
-    public ProtocolSocket getSocket(){
+    public Transport getSocket(){
         return this.socket;
     }
 
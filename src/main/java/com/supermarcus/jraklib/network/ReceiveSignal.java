@@ -0,0 +1,75 @@
+package com.supermarcus.jraklib.network;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wakes up a waiting consumer thread when work is queued, used by interfaces and the session manager
+ *
+ * - Producers call {@link #signal()} after queueing, only a parked consumer is unparked
+ * - A signal that arrives while the consumer is busy is kept, the next await returns at once
+ */
+public class ReceiveSignal implements Runnable {
+    volatile private boolean pending = false;
+
+    volatile private Thread waiter = null;
+
+    public void signal(){
+        if(!this.pending){
+            this.pending = true;
+        }
+        Thread waiter = this.waiter;
+        if(waiter != null){
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    public void run(){
+        this.signal();
+    }
+
+    /**
+     * Spin without parking until a signal arrives or the time is up, only one thread may spin
+     *
+     * @param nanos Maximum time to spin
+     * @return False if the time was up without a signal
+     */
+    public boolean spin(long nanos){
+        long deadline = System.nanoTime() + nanos;
+        do{
+            if(this.pending){
+                this.pending = false;
+                return true;
+            }
+            Thread.yield();
+        }while((System.nanoTime() - deadline) < 0);
+        return false;
+    }
+
+    /**
+     * Wait for a signal, only one thread may wait
+     *
+     * @param timeoutNanos Maximum time to wait
+     * @return False if the timeout elapsed without a signal
+     */
+    public boolean await(long timeoutNanos){
+        if(this.pending){
+            this.pending = false;
+            return true;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        this.waiter = Thread.currentThread();
+        try{
+            while(!this.pending){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            this.pending = false;
+            return true;
+        }finally{
+            this.waiter = null;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.supermarcus.jraklib.network;
 
+import com.supermarcus.jraklib.lang.PooledBuffer;
+
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class ReceivedPacket {
     private byte[] rawPacket;
 
+    private ByteBuffer data = null;
+
+    private PooledBuffer page = null;
+
     private InetSocketAddress fromAddress;
 
     public ReceivedPacket(DatagramPacket dPacket){
@@ -14,17 +21,75 @@ public class ReceivedPacket {
         System.arraycopy(dPacket.getData(), 0, data, 0, dPacket.getLength());
         this.rawPacket = data;
     }
-    
+
     public ReceivedPacket(byte[] buffer, InetSocketAddress address){
         this.fromAddress = address;
         this.rawPacket = buffer;
     }
 
+    /**
+     * Wrap a datagram stored in an arena page, the page reference is dropped on {@link #release()}
+     *
+     * @param data Buffer holding the datagram between position and limit
+     * @param address Source address
+     * @param page Page the datagram is stored in, holding one reference for this packet
+     */
+    public ReceivedPacket(ByteBuffer data, InetSocketAddress address, PooledBuffer page){
+        this.fromAddress = address;
+        this.data = data;
+        this.page = page;
+    }
+
     public InetSocketAddress getSendAddress(){
         return this.fromAddress;
     }
 
+    /**
+     * Get a copy of the datagram as a byte array
+     *
+     * @return Datagram bytes
+     */
     public byte[] getRawData(){
+        if(this.rawPacket == null && this.data != null){
+            byte[] raw = new byte[this.data.remaining()];
+            this.data.duplicate().get(raw);
+            this.rawPacket = raw;
+        }
         return this.rawPacket;
     }
+
+    /**
+     * Get the datagram without copying, only valid until {@link #release()}
+     *
+     * @return Buffer positioned at the first byte of the datagram
+     */
+    public ByteBuffer getData(){
+        if(this.data == null){
+            this.data = ByteBuffer.wrap(this.rawPacket);
+        }
+        return this.data;
+    }
+
+    public int getLength(){
+        return this.rawPacket != null ? this.rawPacket.length : this.data.remaining();
+    }
+
+    /**
+     * @return The page backing this datagram, or null if it is not pooled
+     */
+    public PooledBuffer getPooledBuffer(){
+        return this.page;
+    }
+
+    /**
+     * Drop the reference to the backing page
+     */
+    public void release(){
+        if(this.page != null){
+            PooledBuffer page = this.page;
+            this.page = null;
+            this.data = null;
+            page.release();
+        }
+    }
 }
@@ -3,9 +3,14 @@ package com.supermarcus.jraklib.network;
 import com.supermarcus.jraklib.Session;
 import com.supermarcus.jraklib.SessionManager;
 import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.lang.DuplicateFilter;
 import com.supermarcus.jraklib.lang.RecoveryDataPacket;
+import com.supermarcus.jraklib.lang.ReorderBuffer;
+import com.supermarcus.jraklib.lang.SplitAssembly;
+import com.supermarcus.jraklib.lang.Triad;
+import com.supermarcus.jraklib.network.congestion.CongestionController;
+import com.supermarcus.jraklib.network.congestion.CongestionControllerFactory;
 import com.supermarcus.jraklib.protocol.BinaryUtils;
-import com.supermarcus.jraklib.protocol.Packet;
 import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
 import com.supermarcus.jraklib.protocol.raklib.acknowledge.ACK;
 import com.supermarcus.jraklib.protocol.raklib.acknowledge.AcknowledgePacket;
@@ -19,42 +24,125 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.BiConsumer;
-import java.util.function.Predicate;
 
 public class ReliableManager {
     public static int WINDOW_SIZE = 1024 * 2;
 
-    private WeakReference<Session> ownedSession;
+    /**
+     * Order channels of RELIABLE_ORDERED and RELIABLE_ORDERED_WITH_ACK_RECEIPT frames, sequenced frames have as many sequence channels
+     */
+    public static final int ORDER_CHANNELS = 32;
+
+    /**
+     * Most fragments of a split packet
+     */
+    public static final int MAX_SPLIT_COUNT = 128;
+
+    /**
+     * Most split packets put together at once, the oldest one is dropped for a new one
+     */
+    public static final int MAX_SPLITS = 16;
+
+    /**
+     * Most bytes held for split packets put together, the oldest ones are dropped beyond
+     */
+    public static final int MAX_SPLIT_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Time a split packet may take to arrive whole, in milliseconds
+     */
+    public static final long SPLIT_TIMEOUT = 30 * 1000;
+
+    /**
+     * Shortest interval of a delivery rate sample
+     */
+    public static final long MIN_RATE_INTERVAL_NANOS = 10 * 1000 * 1000L;
+
+    /**
+     * Retransmission timeout until the first RTT sample, in milliseconds
+     */
+    public static final long INITIAL_RTO = 1000;
+
+    public static final long MIN_RTO = 200;
+
+    /**
+     * Upper bound of the retransmission timeout and its backoff, in milliseconds
+     */
+    public static final long MAX_RTO = 8000;
+
+    /**
+     * Clock granularity term of the retransmission timeout, in milliseconds
+     */
+    public static final long RTO_GRANULARITY = 10;
 
-    private HashSet<Integer> ACKQueue = new HashSet<>();
+    private WeakReference<Session> ownedSession;
 
-    private HashSet<Integer> NACKQueue = new HashSet<>();
+    /**
+     * Received datagrams, and the ACKs and NACKs waiting for the next update
+     */
+    private SequenceWindow receiveWindow = new SequenceWindow(ReliableManager.WINDOW_SIZE);
 
     private ConcurrentLinkedQueue<DataPacket> packetToSend = new ConcurrentLinkedQueue<>();
 
-    private DATA_PACKET_4 sendQueue = new DATA_PACKET_4();
+    private ConcurrentLinkedQueue<DataPacket> pacedPackets = new ConcurrentLinkedQueue<>();
 
-    private TreeMap<Integer, RecoveryDataPacket> recoveryQueue = new TreeMap<>();
+    private SendPacer pacer = null;
 
-    private HashMap<Integer, TreeSet<Integer>> needACK = new HashMap<>();
+    /**
+     * Congestion controller gating every datagram, null when only the retransmit limit applies
+     */
+    private CongestionController congestion = null;
 
-    private ArrayList<Integer> receivedWindow = new ArrayList<>();
+    /**
+     * Datagrams waiting for the congestion window, retransmits in packetToSend go first
+     */
+    private ConcurrentLinkedQueue<DataPacket> congestionQueue = new ConcurrentLinkedQueue<>();
 
-    private HashMap<Short, TreeMap<Integer, EncapsulatedPacket>> splitPackets = new HashMap<>();
+    private long bytesInFlight = 0L;
 
-    private int windowStart = 0;
+    private long smoothedRtt = -1L;
 
-    private int windowEnd = ReliableManager.WINDOW_SIZE;
+    private long rttVariance = -1L;
 
-    private int reliableWindowStart = 0;
+    /**
+     * Retransmission timeout in milliseconds, backoff included
+     */
+    private long rto = ReliableManager.INITIAL_RTO;
 
-    private int reliableWindowEnd = ReliableManager.WINDOW_SIZE;
+    private long deliveredBytes = 0L;
 
-    private int lastReliableIndex = -1;
+    private long rateSampleStart = 0L;
 
-    private int sendSeqNumber = 0;
+    private long rateSampleBytes = -1L;
+
+    private boolean rateSampleLimited = true;
+
+    private double deliveryRate = 0;
+
+    private DATA_PACKET_4 sendQueue = new DATA_PACKET_4();
+
+    /**
+     * Datagrams waiting for an ACK in the order they were sent, sequence numbers wrap around so they are not ordered
+     */
+    private LinkedHashMap<Integer, RecoveryDataPacket> recoveryQueue = new LinkedHashMap<>();
+
+    private HashMap<Integer, TreeSet<Integer>> needACK = new HashMap<>();
 
-    private int lastSeqNumber = -1;
+    /**
+     * Whether a set of needACK may have become empty since the last update
+     */
+    private boolean needACKChanged = false;
+
+    /**
+     * Split packets being put together by split ID, in the order their first fragment arrived
+     */
+    private LinkedHashMap<Short, SplitAssembly> splitPackets = new LinkedHashMap<>();
+
+    private long splitBytes = 0L;
+
+    private long droppedSplits = 0L;
+
+    private int sendSeqNumber = 0;
 
     private int messageIndex = 0;
 
@@ -62,9 +150,36 @@ public class ReliableManager {
 
     private int splitID = 0;
 
-    private int[] channelIndex = new int[32];
+    private int[] channelIndex = new int[ReliableManager.ORDER_CHANNELS];
+
+    /**
+     * Next sequence index of every sequence channel, sent in the order index field of sequenced frames
+     */
+    private int[] sequenceIndex = new int[ReliableManager.ORDER_CHANNELS];
+
+    /**
+     * Message indexes of the reliable frames received
+     */
+    private DuplicateFilter reliableFrames = new DuplicateFilter(ReliableManager.WINDOW_SIZE);
+
+    /**
+     * Hold-back queue of every order channel by order index, created on first use
+     */
+    private ReorderBuffer<EncapsulatedPacket>[] orderChannels = ReliableManager.newOrderChannels(ReliableManager.ORDER_CHANNELS);
+
+    /**
+     * Deepest hold-back of every order channel
+     */
+    private int[] orderHoldBackPeak = new int[ReliableManager.ORDER_CHANNELS];
+
+    /**
+     * Newest sequence index handed on of every sequence channel, -1 before the first one
+     */
+    private int[] newestSequence = new int[ReliableManager.ORDER_CHANNELS];
+
+    private long staleSequencedFrames = 0L;
 
-    private TreeMap<Integer, EncapsulatedPacket> reliableWindow = new TreeMap<>();
+    private long refusedDatagrams = 0L;
 
     private SessionManager manager;
 
@@ -72,14 +187,26 @@ public class ReliableManager {
         this.ownedSession = new WeakReference<>(ownedSession);
         this.manager = manager;
 
-        for(int i = 0; i < 32; ++i){
+        for(int i = 0; i < ReliableManager.ORDER_CHANNELS; ++i){
             this.channelIndex[i] = 0;
+            this.sequenceIndex[i] = 0;
+            this.newestSequence[i] = -1;
+        }
+
+        RakLibInterface owner = ownedSession.getOwnedInterface();
+        if(manager.isSendPacing() && (owner != null) && owner.isEventDriven()){
+            this.pacer = new SendPacer(ownedSession.getMtuSize());
+        }
+        CongestionControllerFactory factory = (owner != null) ? owner.getCongestionControl() : null;
+        if(factory != null){
+            this.congestion = factory.create(ownedSession.getMtuSize());
         }
     }
 
     public void addEncapsulatedToQueue(EncapsulatedPacket packet, SendPriority flags){
         if(packet.needACK()){
             this.needACK.put(packet.getIdentifierACK(), new TreeSet<>());
+            this.needACKChanged = true;
         }
 
         if(packet.getReliability() == EncapsulatedPacket.RELIABLE ||
@@ -89,11 +216,20 @@ public class ReliableManager {
                 packet.getReliability() == EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT){
             packet.setMessageIndex(this.messageIndex++);
 
-            if(packet.getReliability() == EncapsulatedPacket.RELIABLE_ORDERED){
+            if(ReliableManager.isOrderedReliability(packet.getReliability())){
                 packet.setOrderIndex(this.channelIndex[packet.getOrderChannel()]++);
             }
         }
 
+        if(packet.getReliability() == EncapsulatedPacket.UNRELIABLE_SEQUENCED || packet.getReliability() == EncapsulatedPacket.RELIABLE_SEQUENCED){
+            if(packet.getOrderChannel() == null){
+                packet.setOrderChannel(0);
+            }
+            int channel = packet.getOrderChannel();
+            packet.setOrderIndex(this.sequenceIndex[channel]);
+            this.sequenceIndex[channel] = (this.sequenceIndex[channel] + 1) & Triad.MASK;
+        }
+
         if((packet.getTotalLength() + 4) > this.getSession().getMtuSize()){
             int splitID = ++this.splitID % 65536;
             ByteBuffer buffer = ByteBuffer.wrap(packet.getBuffer());
@@ -105,6 +241,7 @@ public class ReliableManager {
             for(int i = 0; i < splits.size(); ++i){
                 EncapsulatedPacket splitEncapsulatedPacket = new EncapsulatedPacket();
                 splitEncapsulatedPacket.setSplit(true);
+                splitEncapsulatedPacket.setSplitCount(splits.size());
                 splitEncapsulatedPacket.setSplitID((short) splitID);
                 splitEncapsulatedPacket.setReliability(packet.getReliability());
                 splitEncapsulatedPacket.setSplitIndex(i);
@@ -116,7 +253,7 @@ public class ReliableManager {
                     splitEncapsulatedPacket.setMessageIndex(packet.getMessageIndex());
                 }
 
-                if(splitEncapsulatedPacket.getReliability() == EncapsulatedPacket.RELIABLE_ORDERED){
+                if(packet.getOrderIndex() != null){
                     splitEncapsulatedPacket.setOrderChannel(packet.getOrderChannel());
                     splitEncapsulatedPacket.setOrderIndex(packet.getOrderIndex());
                 }
@@ -141,96 +278,156 @@ public class ReliableManager {
         }
         if(priority == SendPriority.IMMEDIATE){
             DATA_PACKET_0 send = new DATA_PACKET_0();
-            send.setSeqNumber(this.sendSeqNumber++);
+            send.setSeqNumber(this.nextSeqNumber());
             this.sendQueue.addPacket(packet.needACK() ? new EncapsulatedPacket(packet) : packet);
             packet.setNeedACK(false);
             this.getSession().sendPacket(send);
             RecoveryDataPacket recoveryDataPacket = new RecoveryDataPacket(send, System.currentTimeMillis());
             this.recoveryQueue.put(recoveryDataPacket.getSeqNumber(), recoveryDataPacket);
+            this.bytesInFlight += recoveryDataPacket.getLength();
+            this.requestUpdate();
             return;
         }
         if(this.sendQueue.getLength() + packet.getTotalLength() > this.getSession().getMtuSize()){
             this.sendQueue();
         }
         this.sendQueue.addPacket(packet.needACK() ? new EncapsulatedPacket(packet) : packet);
+        this.requestUpdate();
     }
 
+    /**
+     * Add a fragment to its split packet, the whole packet is handed on once the last fragment arrived
+     *
+     * @param packet Fragment, its reference is released
+     */
     public void onSplit(EncapsulatedPacket packet){
-        if(packet.getSplitCount() > 128){
+        int count = packet.getSplitCount();
+        int index = packet.getSplitIndex();
+        if((count < 1) || (count > ReliableManager.MAX_SPLIT_COUNT) || (index < 0) || (index >= count) || (packet.getLength() > this.getSession().getMtuSize())){
+            packet.release();
             return;
         }
 
-        TreeMap<Integer, EncapsulatedPacket> splitPackets;
-        if(this.splitPackets.containsKey(packet.getSplitID())){
-            splitPackets = this.splitPackets.get(packet.getSplitID());
-        }else {
-            splitPackets = new TreeMap<>();
-            this.splitPackets.put(packet.getSplitID(), splitPackets);
+        SplitAssembly assembly = this.splitPackets.get(packet.getSplitID());
+        if(assembly == null){
+            if(this.splitPackets.size() >= ReliableManager.MAX_SPLITS){
+                this.dropSplit(this.splitPackets.keySet().iterator().next());
+            }
+            assembly = new SplitAssembly(count, System.currentTimeMillis());
+            this.splitPackets.put(packet.getSplitID(), assembly);
+        }else if((assembly.getSplitCount() != count) || assembly.isReceived(index)){
+            packet.release();
+            return;
         }
-        splitPackets.put(packet.getSplitIndex(), packet);
 
-        if(splitPackets.size() >= packet.getSplitCount()){
-            ByteBuffer buffer = ByteBuffer.allocate(Packet.MAX_SIZE);
+        int size = assembly.getSize();
+        boolean added = assembly.add(index, packet.getPayload());
+        packet.release();
+        this.splitBytes += assembly.getSize() - size;
+        if(!added){
+            this.dropSplit(packet.getSplitID());
+            return;
+        }
+        while(this.splitBytes > ReliableManager.MAX_SPLIT_BYTES){
+            this.dropSplit(this.splitPackets.keySet().iterator().next());//The new packet goes last, so it is dropped if it does not fit alone
+        }
 
-            for(EncapsulatedPacket pk : splitPackets.values()){
-                buffer.put(pk.getBuffer());
-            }
+        if(assembly.isComplete() && (this.splitPackets.remove(packet.getSplitID()) != null)){
+            this.splitBytes -= assembly.getSize();
 
             EncapsulatedPacket pk = new EncapsulatedPacket();
-            pk.setBuffer(Arrays.copyOf(buffer.array(), buffer.position()));
+            pk.setPayload(assembly.getPayload());
+            pk.setReliability(packet.getReliability());
+            pk.setOrderIndex(packet.getOrderIndex());
+            pk.setOrderChannel(packet.getOrderChannel());
+
+            if(ReliableManager.isOrdered(pk)){
+                this.onOrderedPacket(pk);
+            }else if(ReliableManager.isSequenced(pk) && !this.acceptSequenced(pk)){
+                pk.release();
+            }else{
+                this.getSession().handleEncapsulatedPacketRoute(pk);
+            }
+        }
+    }
 
-            this.getSession().handleEncapsulatedPacketRoute(pk);
+    private void dropSplit(Short splitID){
+        SplitAssembly assembly = this.splitPackets.remove(splitID);
+        if(assembly != null){
+            this.splitBytes -= assembly.getSize();
+            ++this.droppedSplits;
         }
     }
 
     public void onAcknowledgement(AcknowledgePacket packet){
         if(packet instanceof ACK){
-            for(Integer seq : packet.getPackets()){
-                if(this.recoveryQueue.containsKey(seq)){
-                    for(BinaryConvertible binPk : this.recoveryQueue.get(seq).getPacket().getPackets()){
-                        if((binPk instanceof EncapsulatedPacket) && (((EncapsulatedPacket) binPk).needACK()) && (null != ((EncapsulatedPacket) binPk).getMessageIndex())){
-                            this.needACK.get(((EncapsulatedPacket) binPk).getIdentifierACK()).remove(((EncapsulatedPacket) binPk).getMessageIndex());
+            long nanos = System.nanoTime();
+            for(int i = 0; i < packet.getRangeCount(); ++i){
+                for(int seq = packet.getRangeStart(i); seq <= packet.getRangeEnd(i); ++seq){
+                    RecoveryDataPacket recovery = this.recoveryQueue.remove(seq);
+                    if(recovery != null){
+                        long inFlight = this.bytesInFlight;
+                        this.bytesInFlight -= recovery.getLength();
+                        for(BinaryConvertible binPk : recovery.getPacket().getPackets()){
+                            if((binPk instanceof EncapsulatedPacket) && (((EncapsulatedPacket) binPk).needACK()) && (null != ((EncapsulatedPacket) binPk).getMessageIndex())){
+                                this.needACK.get(((EncapsulatedPacket) binPk).getIdentifierACK()).remove(((EncapsulatedPacket) binPk).getMessageIndex());
+                                this.needACKChanged = true;
+                            }
+                        }
+                        this.onRttSample(nanos - recovery.getSendNanos());
+                        this.deliveredBytes += recovery.getLength();
+                        if(this.congestion != null){
+                            this.congestion.onAck(recovery.getLength(), nanos - recovery.getSendNanos(), inFlight, nanos);
                         }
                     }
-                    this.recoveryQueue.remove(seq);
                 }
             }
+            this.updateDeliveryRate(nanos);
+            if(this.congestion != null){
+                long rate = this.congestion.getPacingRate();
+                if((this.pacer != null) && (rate > 0)){
+                    this.pacer.setRate(rate);
+                }
+                this.flushCongestion(nanos);
+            }
         }else if(packet instanceof NACK){
-            for(Integer seq : packet.getPackets()){
-                if(this.recoveryQueue.containsKey(seq)){
-                    DataPacket pk = this.recoveryQueue.get(seq).getPacket();
-                    pk.setSeqNumber(this.sendSeqNumber++);
-                    this.packetToSend.add(pk);
-                    this.recoveryQueue.remove(seq);
+            long nanos = System.nanoTime();
+            for(int i = 0; i < packet.getRangeCount(); ++i){
+                for(int seq = packet.getRangeStart(i); seq <= packet.getRangeEnd(i); ++seq){
+                    RecoveryDataPacket recovery = this.recoveryQueue.remove(seq);
+                    if(recovery != null){
+                        this.bytesInFlight -= recovery.getLength();
+                        if(this.congestion != null){
+                            this.congestion.onLoss(recovery.getLength(), recovery.getSendNanos(), nanos);
+                        }
+                        this.packetToSend.add(recovery.getPacket());
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Handle a data packet, references of the decoded packets are handed on or released
+     *
+     * @param packet Data packet received
+     */
     public void onDataPacket(DataPacket packet){
-        if((packet.getSeqNumber() < this.windowStart) || (packet.getSeqNumber() > this.windowEnd) || this.receivedWindow.contains(packet.getSeqNumber())){
-            return;
-        }
-
-        int diff = packet.getSeqNumber() - this.lastSeqNumber;
-
-        this.NACKQueue.remove(packet.getSeqNumber());
-        this.ACKQueue.add(packet.getSeqNumber());
-        this.receivedWindow.add(packet.getSeqNumber());
-
-        if(diff != 1){
-            for(int i = this.lastSeqNumber; i < packet.getSeqNumber(); ++i){
-                this.NACKQueue.add(i);
+        BinaryConvertible[] packets = packet.getPackets();
+        for (BinaryConvertible encapsulatedPacket : packets){
+            if((encapsulatedPacket instanceof EncapsulatedPacket) && this.isTooFarAhead((EncapsulatedPacket) encapsulatedPacket)){
+                ++this.refusedDatagrams;
+                packet.releasePackets();//Not acknowledged, the sender sends it again once the windows caught up
+                return;
             }
         }
-
-        if(diff >= 1){
-            this.lastSeqNumber = packet.getSeqNumber();
-            this.windowStart += diff;
-            this.windowEnd += diff;
+        if(!this.receiveWindow.receive(packet.getSeqNumber())){
+            packet.releasePackets();
+            return;
         }
 
-        for (BinaryConvertible encapsulatedPacket : packet.getPackets()){
+        packet.clearPackets();
+        for (BinaryConvertible encapsulatedPacket : packets){
             if(encapsulatedPacket instanceof EncapsulatedPacket){
                 this.onEncapsulatedPacket((EncapsulatedPacket) encapsulatedPacket);
             }
@@ -238,75 +435,155 @@ public class ReliableManager {
     }
 
     public void onEncapsulatedPacket(EncapsulatedPacket packet){
-        if(packet.getMessageIndex() == null){
-            this.getSession().handleEncapsulatedPacketRoute(packet);
+        if((packet.getMessageIndex() != null) && !this.reliableFrames.accept(packet.getMessageIndex())){
+            packet.release();//Duplicate
+        }else if(ReliableManager.isOrdered(packet)){
+            this.onOrderedPacket(packet);
+        }else if(ReliableManager.isSequenced(packet) && !packet.hasSplit() && !this.acceptSequenced(packet)){
+            packet.release();//Older than a frame already handed on, split frames are checked once put together
         }else{
-            if((packet.getMessageIndex() < this.reliableWindowStart) || (packet.getMessageIndex() > this.reliableWindowEnd)){
-                return;
-            }
+            this.getSession().handleEncapsulatedPacketRoute(packet);//Unordered frames do not wait for earlier ones
+        }
+    }
 
-            if((packet.getMessageIndex() - this.lastReliableIndex) == 1){
-                this.lastReliableIndex++;
-                this.reliableWindowStart++;
-                this.reliableWindowEnd++;
-                this.getSession().handleEncapsulatedPacketRoute(packet);
-
-                if(!this.reliableWindow.isEmpty()){
-                    final boolean[] valid = {true};
-                    final HashSet<Integer> packetToRemove = new HashSet<>();
-
-                    this.reliableWindow.forEach(new BiConsumer<Integer, EncapsulatedPacket>() {
-                        @Override
-                        public void accept(Integer index, EncapsulatedPacket packet) {
-                            if(valid[0] && (index - lastReliableIndex) == 1){
-                                ReliableManager.this.lastReliableIndex++;
-                                ReliableManager.this.reliableWindowStart++;
-                                ReliableManager.this.reliableWindowEnd++;
-                                ReliableManager.this.getSession().handleEncapsulatedPacketRoute(packet);
-                                packetToRemove.add(index);
-                            }else{
-                                valid[0] = false;
-                            }
-                        }
-                    });
+    /**
+     * Hand on an ordered frame once the frames before it on its channel arrived, split frames are put together first
+     *
+     * @param packet Ordered frame which is not a duplicate
+     */
+    private void onOrderedPacket(EncapsulatedPacket packet){
+        if(packet.hasSplit()){
+            this.getSession().handleEncapsulatedPacketRoute(packet);
+            return;
+        }
+        int channel = packet.getOrderChannel();
+        ReorderBuffer<EncapsulatedPacket> holdBack = this.getHoldBack(channel);
+        if(holdBack == null){
+            packet.release();
+            return;
+        }
+        if(!holdBack.offer(packet.getOrderIndex(), packet)){
+            packet.release();//Same order index as a frame held or handed on already
+            return;
+        }
+        EncapsulatedPacket ready;
+        while((ready = holdBack.poll()) != null){
+            this.getSession().handleEncapsulatedPacketRoute(ready);
+        }
+        this.orderHoldBackPeak[channel] = Math.max(this.orderHoldBackPeak[channel], holdBack.getHeld());
+    }
 
-                    for(Integer index : packetToRemove){
-                        this.reliableWindow.remove(index);
-                    }
-                }
-            }
+    /**
+     * @param channel Order channel
+     * @return Hold-back queue of the channel, created on first use, or null for an invalid channel
+     */
+    private ReorderBuffer<EncapsulatedPacket> getHoldBack(int channel){
+        if((channel < 0) || (channel >= ReliableManager.ORDER_CHANNELS)){
+            return null;
+        }
+        ReorderBuffer<EncapsulatedPacket> holdBack = this.orderChannels[channel];
+        if(holdBack == null){
+            holdBack = this.orderChannels[channel] = new ReorderBuffer<>(ReliableManager.WINDOW_SIZE);
+        }
+        return holdBack;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ReorderBuffer<EncapsulatedPacket>[] newOrderChannels(int channels){
+        return new ReorderBuffer[channels];
+    }
+
+    /**
+     * A frame is acknowledged with its datagram, the windows have to take it before that or it would be lost
+     *
+     * @param packet Received frame
+     * @return Whether the message index or order index of the frame is too far ahead of its window
+     */
+    private boolean isTooFarAhead(EncapsulatedPacket packet){
+        if((packet.getMessageIndex() != null) && this.reliableFrames.isTooFarAhead(packet.getMessageIndex())){
+            return true;
+        }
+        if(ReliableManager.isOrdered(packet)){
+            ReorderBuffer<EncapsulatedPacket> holdBack = this.getHoldBack(packet.getOrderChannel());
+            return (holdBack != null) && holdBack.isTooFarAhead(packet.getOrderIndex());
         }
+        return false;
+    }
+
+    /**
+     * @param packet Received frame
+     * @return Whether the frame is delivered in order of its order channel
+     */
+    private static boolean isOrdered(EncapsulatedPacket packet){
+        return ReliableManager.isOrderedReliability(packet.getReliability()) && (packet.getOrderIndex() != null) && (packet.getOrderChannel() != null);
+    }
+
+    /**
+     * @param reliability Reliability of a frame
+     * @return Whether frames of the reliability are delivered in order of their order channel, with or without ACK receipt
+     */
+    private static boolean isOrderedReliability(int reliability){
+        return (reliability == EncapsulatedPacket.RELIABLE_ORDERED) || (reliability == EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT);
+    }
+
+    /**
+     * @param packet Received frame
+     * @return Whether only the newest frame of its sequence channel is delivered
+     */
+    private static boolean isSequenced(EncapsulatedPacket packet){
+        return ((packet.getReliability() == EncapsulatedPacket.UNRELIABLE_SEQUENCED) || (packet.getReliability() == EncapsulatedPacket.RELIABLE_SEQUENCED)) && (packet.getOrderIndex() != null) && (packet.getOrderChannel() != null);
+    }
+
+    /**
+     * Record a sequenced frame as the newest of its channel, frames which are not newer are counted as stale
+     *
+     * @param packet Sequenced frame which is not a duplicate
+     * @return False if the frame is stale or on an invalid channel, it has to be dropped then
+     */
+    private boolean acceptSequenced(EncapsulatedPacket packet){
+        int channel = packet.getOrderChannel();
+        if((channel < 0) || (channel >= ReliableManager.ORDER_CHANNELS)){
+            return false;
+        }
+        int index = packet.getOrderIndex() & Triad.MASK;
+        int newest = this.newestSequence[channel];
+        if((newest >= 0) && (Triad.distance(newest, index) <= 0)){
+            ++this.staleSequencedFrames;
+            return false;
+        }
+        this.newestSequence[channel] = index;
+        return true;
     }
 
     public void onUpdate(final long millis){
-        if(!this.ACKQueue.isEmpty()){
-            ACK pk = new ACK();
-            pk.addPackets(this.ACKQueue);
-            this.getSession().sendPacket(pk);
-            this.ACKQueue.clear();
+        if(this.receiveWindow.hasPendingAcks() || this.receiveWindow.hasPendingNacks()){
+            ACK ack = new ACK();
+            NACK nack = new NACK();
+            this.receiveWindow.flush(ack, nack);
+            if(ack.getRangeCount() > 0){
+                this.getSession().sendPacket(ack);
+            }
+            if(nack.getRangeCount() > 0){
+                this.getSession().sendPacket(nack);
+            }
         }
 
-        if(!this.NACKQueue.isEmpty()){
-            NACK pk = new NACK();
-            pk.addPackets(this.NACKQueue);
-            this.getSession().sendPacket(pk);
-            this.NACKQueue.clear();
+        if(this.pacer != null){
+            this.flushPaced(System.nanoTime());
         }
 
-        if(!this.packetToSend.isEmpty()){
+        if((this.congestion == null) && !this.packetToSend.isEmpty()){
             int limit = 16;
             while(((--limit) >= 0) && !this.packetToSend.isEmpty()){
-                DataPacket pk = this.packetToSend.poll();
-                RecoveryDataPacket rpk = new RecoveryDataPacket(pk, millis);
-                this.recoveryQueue.put(rpk.getSeqNumber(), rpk);
-                this.getSession().sendPacket(pk);
+                this.queueDatagram(this.packetToSend.poll());
             }
             if(this.packetToSend.size() > ReliableManager.WINDOW_SIZE){
                 this.packetToSend.clear();
             }
         }
 
-        if(!this.needACK.isEmpty()){
+        if(this.needACKChanged){
+            this.needACKChanged = false;
             final HashSet<Integer> needToRemove = new HashSet<>();
             this.needACK.forEach(new BiConsumer<Integer, TreeSet<Integer>>() {
                 public void accept(Integer identifier, TreeSet<Integer> indexes) {
@@ -321,41 +598,344 @@ public class ReliableManager {
             }
         }
 
-        if(!this.recoveryQueue.isEmpty()){
-            final HashSet<RecoveryDataPacket> needToRecovery = new HashSet<>();
-            this.recoveryQueue.forEach(new BiConsumer<Integer, RecoveryDataPacket>() {
-                @Override
-                public void accept(Integer seq, RecoveryDataPacket pk) {
-                    if (pk.getSendTime() < (millis - 8000)) {
-                        needToRecovery.add(pk);
-                    }
-                }
-            });
-            for(RecoveryDataPacket pk : needToRecovery){
-                this.recoveryQueue.remove(pk.getSeqNumber());
-                this.packetToSend.add(pk.getPacket());
+        boolean expired = false;
+        Iterator<RecoveryDataPacket> recoveries = this.recoveryQueue.values().iterator();
+        while(recoveries.hasNext()){//The first one was sent first
+            RecoveryDataPacket pk = recoveries.next();
+            if(pk.getSendTime() > (millis - this.rto)){
+                break;
+            }
+            recoveries.remove();
+            this.bytesInFlight -= pk.getLength();
+            this.packetToSend.add(pk.getPacket());
+            expired = true;
+        }
+        Iterator<SplitAssembly> splits = this.splitPackets.values().iterator();
+        while(splits.hasNext()){//The first one was started first
+            SplitAssembly assembly = splits.next();
+            if(assembly.getStartTime() > (millis - ReliableManager.SPLIT_TIMEOUT)){
+                break;
             }
+            splits.remove();
+            this.splitBytes -= assembly.getSize();
+            ++this.droppedSplits;
         }
 
-        this.receivedWindow.removeIf(new Predicate<Integer>() {
-            @Override
-            public boolean test(Integer seq) {
-                return (seq < ReliableManager.this.windowStart);
+        if(expired){//Back off until an ACK brings a new RTT sample
+            this.rto = Math.min(ReliableManager.MAX_RTO, this.rto * 2);
+            if(this.congestion != null){
+                this.congestion.onTimeout(System.nanoTime());
             }
-        });
+        }
 
         this.sendQueue();
+
+        if(this.congestion != null){
+            this.flushCongestion(System.nanoTime());
+        }
+    }
+
+    /**
+     * @param millis Current time
+     * @return Time this manager has to be updated at next, Long.MAX_VALUE if it has nothing to wait for
+     */
+    public long getNextDeadline(long millis){
+        boolean sendable = (this.congestion == null) ? !this.packetToSend.isEmpty() : this.canSendCongested();
+        if(this.receiveWindow.hasPendingAcks() || this.receiveWindow.hasPendingNacks() || sendable || (this.sendQueue.countPackets() > 0) || this.needACKChanged){
+            return millis;
+        }
+        long deadline = Long.MAX_VALUE;
+        if(!this.recoveryQueue.isEmpty()){
+            deadline = this.recoveryQueue.values().iterator().next().getSendTime() + this.rto;
+        }
+        if(!this.splitPackets.isEmpty()){
+            deadline = Math.min(deadline, this.splitPackets.values().iterator().next().getStartTime() + ReliableManager.SPLIT_TIMEOUT);
+        }
+        return deadline;
     }
 
     public void sendQueue(){
         if(this.sendQueue.countPackets() > 0){
-            this.sendQueue.setSeqNumber(this.sendSeqNumber++);
-            this.getSession().sendPacket(this.sendQueue);
-            this.recoveryQueue.put(this.sendQueue.getSeqNumber(), new RecoveryDataPacket(this.sendQueue, System.currentTimeMillis()));
+            this.queueDatagram(this.sendQueue);
             this.sendQueue = new DATA_PACKET_4();
         }
     }
 
+    /**
+     * Send the datagrams the pacer allows, the owner interface calls it again when the delay has passed
+     *
+     * @param nanos Current System.nanoTime()
+     * @return Nanoseconds until the next datagram may be sent, or -1 if nothing is waiting
+     */
+    public long flushPaced(long nanos){
+        if(this.congestion != null){
+            return this.flushCongestion(nanos);
+        }
+        DataPacket packet;
+        while((packet = this.pacedPackets.peek()) != null){
+            if(!this.pacer.tryConsume(packet.getLength(), nanos)){
+                this.rateSampleLimited = false;
+                RakLibInterface owner = this.getSession().getOwnedInterface();
+                if(owner != null){
+                    owner.schedulePacing(this.getSession());
+                }
+                return this.pacer.getDelayNanos(nanos);
+            }
+            this.pacedPackets.poll();
+            this.transmit(packet);
+        }
+        return -1L;
+    }
+
+    public boolean isPacing(){
+        return this.pacer != null;
+    }
+
+    /**
+     * @return Pacing rate in bytes per second, or -1 if the session is not paced
+     */
+    public long getPacingRate(){
+        return (this.pacer != null) ? this.pacer.getRate() : -1L;
+    }
+
+    /**
+     * @return Datagrams waiting for the pacer
+     */
+    public int getPacedPackets(){
+        return this.pacedPackets.size();
+    }
+
+    /**
+     * @return Congestion controller of the session, or null if sending is only limited per tick
+     */
+    public CongestionController getCongestionController(){
+        return this.congestion;
+    }
+
+    /**
+     * @return Congestion window in bytes, or -1 if the session has no congestion controller
+     */
+    public long getCongestionWindow(){
+        return (this.congestion != null) ? this.congestion.getCongestionWindow() : -1L;
+    }
+
+    /**
+     * @return Bytes sent and not acknowledged or reported lost yet
+     */
+    public long getBytesInFlight(){
+        return this.bytesInFlight;
+    }
+
+    /**
+     * @param channel Order channel
+     * @return Ordered frames of the channel held until an earlier one arrives
+     */
+    public int getOrderHoldBack(int channel){
+        ReorderBuffer<EncapsulatedPacket> holdBack = this.orderChannels[channel];
+        return (holdBack != null) ? holdBack.getHeld() : 0;
+    }
+
+    /**
+     * @param channel Order channel
+     * @return Most ordered frames the channel held at once
+     */
+    public int getOrderHoldBackPeak(int channel){
+        return this.orderHoldBackPeak[channel];
+    }
+
+    /**
+     * @return Datagrams left unacknowledged because a frame in them was too far ahead of its window
+     */
+    public long getRefusedDatagrams(){
+        return this.refusedDatagrams;
+    }
+
+    /**
+     * @return Sequenced frames dropped for being older than the newest one of their channel
+     */
+    public long getStaleSequencedFrames(){
+        return this.staleSequencedFrames;
+    }
+
+    /**
+     * @return Split packets waiting for fragments
+     */
+    public int getPendingSplits(){
+        return this.splitPackets.size();
+    }
+
+    /**
+     * @return Bytes held for split packets waiting for fragments
+     */
+    public long getPendingSplitBytes(){
+        return this.splitBytes;
+    }
+
+    /**
+     * @return Split packets dropped unfinished, because they timed out, did not fit the limits or were malformed
+     */
+    public long getDroppedSplits(){
+        return this.droppedSplits;
+    }
+
+    /**
+     * @return Smoothed round trip time in nanoseconds, or -1 before the first ACK
+     */
+    public long getSmoothedRtt(){
+        return this.smoothedRtt;
+    }
+
+    /**
+     * @return RTT variance in nanoseconds, or -1 before the first ACK
+     */
+    public long getRttVariance(){
+        return this.rttVariance;
+    }
+
+    /**
+     * @return Current retransmission timeout in milliseconds, backoff included
+     */
+    public long getRetransmissionTimeout(){
+        return this.rto;
+    }
+
+    /**
+     * @return Bytes per second acknowledged by the remote in the last sample
+     */
+    public double getDeliveryRate(){
+        return this.deliveryRate;
+    }
+
+    public void setMtuSize(int mtuSize){
+        if(this.pacer != null){
+            this.pacer.setMtuSize(mtuSize);
+        }
+        if(this.congestion != null){
+            this.congestion.setMtuSize(mtuSize);
+        }
+    }
+
+    private void queueDatagram(DataPacket packet){
+        if(this.congestion != null){
+            this.congestionQueue.add(packet);
+            Session session = this.getSession();
+            if(Thread.currentThread() == session.getOwnedInterface()){
+                this.flushCongestion(System.nanoTime());
+            }else{
+                this.requestUpdate();//The window is only read and changed on the interface thread
+            }
+        }else if(this.pacer != null){
+            this.pacedPackets.add(packet);
+            this.flushPaced(System.nanoTime());
+        }else{
+            this.transmit(packet);
+        }
+    }
+
+    /**
+     * Send a datagram, sequence numbers are given at send time so they go out in order
+     *
+     * @param packet Datagram to send
+     */
+    private void transmit(DataPacket packet){
+        packet.setSeqNumber(this.nextSeqNumber());
+        this.getSession().sendPacket(packet);
+        RecoveryDataPacket recovery = new RecoveryDataPacket(packet, System.currentTimeMillis());
+        this.recoveryQueue.put(recovery.getSeqNumber(), recovery);
+        this.bytesInFlight += recovery.getLength();
+    }
+
+    /**
+     * Send the datagrams the congestion window and the pacer allow, retransmits first
+     *
+     * @param nanos Current System.nanoTime()
+     * @return Nanoseconds until the pacer allows the next datagram, or -1 if nothing waits for it
+     */
+    private long flushCongestion(long nanos){
+        while(true){
+            Queue<DataPacket> queue = this.packetToSend.isEmpty() ? this.congestionQueue : this.packetToSend;
+            DataPacket packet = queue.peek();
+            if(packet == null){
+                return -1L;
+            }
+            int length = packet.getLength();
+            if((this.bytesInFlight > 0) && !this.congestion.canSend(this.bytesInFlight, length)){
+                this.rateSampleLimited = false;
+                return -1L;//Sent when an ACK or a loss opens the window
+            }
+            if((this.pacer != null) && !this.pacer.tryConsume(length, nanos)){
+                this.rateSampleLimited = false;
+                RakLibInterface owner = this.getSession().getOwnedInterface();
+                if(owner != null){
+                    owner.schedulePacing(this.getSession());
+                }
+                return this.pacer.getDelayNanos(nanos);
+            }
+            queue.poll();
+            this.transmit(packet);
+        }
+    }
+
+    /**
+     * @return Whether the congestion window lets the next waiting datagram go
+     */
+    private boolean canSendCongested(){
+        DataPacket packet = this.packetToSend.isEmpty() ? this.congestionQueue.peek() : this.packetToSend.peek();
+        return (packet != null) && ((this.bytesInFlight == 0) || this.congestion.canSend(this.bytesInFlight, packet.getLength()));
+    }
+
+    private int nextSeqNumber(){
+        int seq = this.sendSeqNumber;
+        this.sendSeqNumber = (seq + 1) & Triad.MASK;
+        return seq;
+    }
+
+    /**
+     * Have the owner interface update the session on its next tick, needed for packets queued from other threads
+     */
+    private void requestUpdate(){
+        Session session = this.getSession();
+        RakLibInterface owner = (session != null) ? session.getOwnedInterface() : null;
+        if(owner != null){
+            owner.requestUpdate(session);
+        }
+    }
+
+    /**
+     * Update SRTT, RTTVAR and the retransmission timeout as in RFC 6298
+     *
+     * Datagrams are sent again with a new sequence number, so every sample is unambiguous
+     *
+     * @param rtt Round trip time of an acknowledged datagram in nanoseconds
+     */
+    private void onRttSample(long rtt){
+        if(this.smoothedRtt < 0){
+            this.smoothedRtt = rtt;
+            this.rttVariance = rtt / 2;
+        }else{
+            this.rttVariance += (Math.abs(this.smoothedRtt - rtt) - this.rttVariance) / 4;
+            this.smoothedRtt += (rtt - this.smoothedRtt) / 8;
+        }
+        long rto = (this.smoothedRtt / (1000 * 1000L)) + Math.max(ReliableManager.RTO_GRANULARITY, (4 * this.rttVariance) / (1000 * 1000L));
+        this.rto = Math.max(ReliableManager.MIN_RTO, Math.min(ReliableManager.MAX_RTO, rto));
+    }
+
+    private void updateDeliveryRate(long nanos){
+        long elapsed = nanos - this.rateSampleStart;
+        if((this.rateSampleBytes >= 0) && (elapsed < Math.max(this.smoothedRtt, ReliableManager.MIN_RATE_INTERVAL_NANOS))){
+            return;
+        }
+        if(this.rateSampleBytes >= 0){
+            this.deliveryRate = (this.deliveredBytes - this.rateSampleBytes) * 1000000000.0 / elapsed;
+            if(this.pacer != null){
+                this.pacer.onDeliveryRate(this.deliveryRate, this.rateSampleLimited);
+            }
+        }
+        this.rateSampleStart = nanos;
+        this.rateSampleBytes = this.deliveredBytes;
+        this.rateSampleLimited = this.pacedPackets.isEmpty() && this.congestionQueue.isEmpty() && this.packetToSend.isEmpty();
+    }
+
     private Session getSession(){
         return ownedSession.get();
     }
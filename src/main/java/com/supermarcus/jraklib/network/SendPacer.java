@@ -0,0 +1,108 @@
+package com.supermarcus.jraklib.network;
+
+/**
+ * Token bucket spacing the datagrams of a session
+ *
+ * - Tokens are bytes, refilled at the pacing rate up to the burst size
+ * - A datagram is released while the bucket is not empty, so the bucket may go below zero by one datagram
+ * - The rate follows the delivery rate measured from ACKs, with headroom so the session can speed up
+ */
+public class SendPacer {
+    /**
+     * Rate used until the first delivery rate sample, bytes per second
+     */
+    public static final long INITIAL_RATE = 256 * 1024;
+
+    public static final long MIN_RATE = 16 * 1024;
+
+    /**
+     * Pacing rate relative to the measured delivery rate
+     */
+    public static final double PACING_GAIN = 2.0;
+
+    /**
+     * Datagrams of the MTU size the bucket may hold
+     */
+    public static final int BURST_DATAGRAMS = 4;
+
+    private long rate = SendPacer.INITIAL_RATE;
+
+    private long burst;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param mtuSize MTU of the session
+     */
+    public SendPacer(int mtuSize){
+        this.burst = (long) mtuSize * SendPacer.BURST_DATAGRAMS;
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take tokens for a datagram
+     *
+     * @param bytes Datagram size
+     * @param nanos Current System.nanoTime()
+     * @return False if the datagram has to wait
+     */
+    public boolean tryConsume(int bytes, long nanos){
+        this.refill(nanos);
+        if(this.tokens <= 0){
+            return false;
+        }
+        this.tokens -= bytes;
+        return true;
+    }
+
+    /**
+     * @param nanos Current System.nanoTime()
+     * @return Nanoseconds until the next datagram may be sent, 0 if it may be sent now
+     */
+    public long getDelayNanos(long nanos){
+        this.refill(nanos);
+        if(this.tokens > 0){
+            return 0L;
+        }
+        return (long) ((1 - this.tokens) * 1000000000L / this.rate) + 1;
+    }
+
+    /**
+     * Apply a delivery rate sample
+     *
+     * @param deliveryRate Bytes per second delivered
+     * @param appLimited Whether the session had nothing waiting, such a sample may only raise the rate
+     */
+    public void onDeliveryRate(double deliveryRate, boolean appLimited){
+        long rate = Math.max(SendPacer.MIN_RATE, (long) (deliveryRate * SendPacer.PACING_GAIN));
+        if(!appLimited || rate > this.rate){
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * @return Pacing rate in bytes per second
+     */
+    public long getRate(){
+        return this.rate;
+    }
+
+    public void setRate(long rate){
+        this.rate = Math.max(SendPacer.MIN_RATE, rate);
+    }
+
+    public void setMtuSize(int mtuSize){
+        this.burst = (long) mtuSize * SendPacer.BURST_DATAGRAMS;
+    }
+
+    private void refill(long nanos){
+        long elapsed = nanos - this.lastRefill;
+        if(elapsed > 0){
+            this.tokens = Math.min(this.burst, this.tokens + (elapsed * (double) this.rate / 1000000000L));
+            this.lastRefill = nanos;
+        }
+    }
+}
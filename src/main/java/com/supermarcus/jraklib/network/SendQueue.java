@@ -0,0 +1,121 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.lang.RingBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Outgoing datagrams of a transport, one ring per send priority
+ *
+ * - Higher priorities are drained first, FIFO within a priority
+ * - Only one thread drains at a time
+ */
+public class SendQueue {
+    /**
+     * Datagrams each priority can hold before writers have to flush
+     */
+    public static final int RING_CAPACITY = 4096;
+
+    /**
+     * Datagrams sent before checking higher priorities again
+     */
+    public static final int BATCH_SIZE = 64;
+
+    private static final SendPriority[] DRAIN_ORDER = SendPriority.values();
+
+    static {
+        Arrays.sort(SendQueue.DRAIN_ORDER, (a, b) -> b.getValue() - a.getValue());
+    }
+
+    private RingBuffer<QueuePacket>[] rings;
+
+    private AtomicBoolean draining = new AtomicBoolean(false);
+
+    private AtomicLong droppedPackets = new AtomicLong(0L);
+
+    private AtomicLong backpressureCount = new AtomicLong(0L);
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SendQueue(int capacity){
+        this.rings = new RingBuffer[SendPriority.values().length];
+        for(int i = 0; i < this.rings.length; ++i){
+            this.rings[i] = new RingBuffer<>(capacity);
+        }
+    }
+
+    /**
+     * Queue a datagram
+     *
+     * @param packet Datagram to queue
+     * @param flusher Called to make room when the ring of the priority is full
+     * @return False if the datagram has been dropped
+     */
+    public boolean offer(QueuePacket packet, Runnable flusher){
+        RingBuffer<QueuePacket> ring = this.rings[packet.getPriority().ordinal()];
+        if(!ring.offer(packet)){
+            this.backpressureCount.incrementAndGet();
+            flusher.run();
+            if(!ring.offer(packet)){
+                this.droppedPackets.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hand everything queued to the sender
+     *
+     * Returns at once if another thread is already draining
+     *
+     * @param sender Receives the datagrams in send order
+     * @return Whether this thread did the draining
+     */
+    public boolean drain(Consumer<QueuePacket> sender){
+        do{
+            if(!this.draining.compareAndSet(false, true)){
+                return false;//Another thread is draining
+            }
+            try{
+                boolean drained;
+                do{
+                    drained = false;
+                    for(SendPriority priority : SendQueue.DRAIN_ORDER){
+                        if(this.rings[priority.ordinal()].drain(sender, SendQueue.BATCH_SIZE) > 0){
+                            drained = true;
+                            break;
+                        }
+                    }
+                }while(drained);
+            }finally{
+                this.draining.set(false);
+            }
+        }while(this.size() > 0);
+        return true;
+    }
+
+    public int size(){
+        int queued = 0;
+        for(RingBuffer<QueuePacket> ring : this.rings){
+            queued += ring.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return Datagrams dropped because their ring stayed full
+     */
+    public long getDroppedPackets(){
+        return this.droppedPackets.get();
+    }
+
+    /**
+     * @return Times a writer found its ring full and had to flush it
+     */
+    public long getBackpressureCount(){
+        return this.backpressureCount.get();
+    }
+}
@@ -0,0 +1,186 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.lang.Triad;
+import com.supermarcus.jraklib.protocol.raklib.acknowledge.AcknowledgePacket;
+
+/**
+ * Receive window over the 24 bit datagram sequence numbers, kept as ring bitmaps
+ *
+ * - A sequence number maps to bit (seq % size), the ring follows the sequence space across its wraparound
+ * - Datagrams are accepted from the window start up to size sequence numbers ahead of it, each one once
+ * - Received sequence numbers wait for the next ACK, skipped ones for the next NACK
+ * - Writing the ACK moves the window start to half a window behind the highest sequence number, so late datagrams are still taken
+ * - Nothing is allocated after construction
+ */
+public class SequenceWindow {
+    private final int size;
+
+    private final long[] received;
+
+    private final long[] acks;
+
+    private final long[] nacks;
+
+    /**
+     * Lowest sequence number accepted
+     */
+    private int start = 0;
+
+    /**
+     * One after the highest sequence number received
+     */
+    private int next = 0;
+
+    /**
+     * Lowest sequence number with a pending ACK or NACK, the flush scans from here
+     */
+    private int pendingFrom = 0;
+
+    private int pendingAcks = 0;
+
+    private int pendingNacks = 0;
+
+    /**
+     * @param size Sequence numbers in the window, rounded up to a power of two between 64 and Triad.MAX_WINDOW
+     */
+    public SequenceWindow(int size){
+        this.size = Triad.windowSize(size, 64);
+        this.received = new long[this.size / 64];
+        this.acks = new long[this.size / 64];
+        this.nacks = new long[this.size / 64];
+    }
+
+    /**
+     * Mark a datagram received
+     *
+     * @param seq Sequence number of the datagram
+     * @return False if it is outside of the window or a duplicate
+     */
+    public boolean receive(int seq){
+        seq &= Triad.MASK;
+        int offset = Triad.distance(this.start, seq);
+        if((offset < 0) || (offset >= this.size)){
+            return false;
+        }
+        if(this.get(this.received, seq)){
+            return false;
+        }
+        this.set(this.received, seq);
+        if(this.get(this.nacks, seq)){
+            this.clear(this.nacks, seq);
+            --this.pendingNacks;
+        }
+        this.set(this.acks, seq);
+        this.markPending(seq);
+        ++this.pendingAcks;
+        if(Triad.distance(this.next, seq) >= 0){
+            for(int skipped = this.next; skipped != seq; skipped = (skipped + 1) & Triad.MASK){
+                this.set(this.nacks, skipped);
+                ++this.pendingNacks;
+            }
+            this.markPending(this.next);
+            this.next = (seq + 1) & Triad.MASK;
+        }
+        return true;
+    }
+
+    /**
+     * @param seq Sequence number
+     * @return Whether the datagram was received, false outside of the window
+     */
+    public boolean isReceived(int seq){
+        seq &= Triad.MASK;
+        int offset = Triad.distance(this.start, seq);
+        return (offset >= 0) && (offset < this.size) && this.get(this.received, seq);
+    }
+
+    public boolean hasPendingAcks(){
+        return this.pendingAcks > 0;
+    }
+
+    public boolean hasPendingNacks(){
+        return this.pendingNacks > 0;
+    }
+
+    /**
+     * Move the pending ACKs and NACKs into packets as ranges, then advance the window
+     *
+     * @param ack Receives the received sequence numbers
+     * @param nack Receives the skipped sequence numbers
+     */
+    public void flush(AcknowledgePacket ack, AcknowledgePacket nack){
+        if((this.pendingAcks > 0) || (this.pendingNacks > 0)){
+            this.writeRanges(this.acks, ack);
+            this.writeRanges(this.nacks, nack);
+            this.pendingAcks = 0;
+            this.pendingNacks = 0;
+        }
+        this.pendingFrom = this.next;
+        int start = (this.next - (this.size / 2)) & Triad.MASK;
+        while(Triad.distance(this.start, start) > 0){
+            this.clear(this.received, this.start);
+            this.clear(this.nacks, this.start);
+            this.start = (this.start + 1) & Triad.MASK;
+        }
+    }
+
+    public int getSize(){
+        return this.size;
+    }
+
+    /**
+     * @return Lowest sequence number accepted
+     */
+    public int getStart(){
+        return this.start;
+    }
+
+    /**
+     * @return One after the highest sequence number received
+     */
+    public int getNext(){
+        return this.next;
+    }
+
+    private void writeRanges(long[] bits, AcknowledgePacket packet){
+        int rangeStart = -1;
+        int seq = this.pendingFrom;
+        for(int count = Triad.distance(this.pendingFrom, this.next); count > 0; --count){
+            boolean set = this.get(bits, seq);
+            if(set){
+                this.clear(bits, seq);
+                if(rangeStart < 0){
+                    rangeStart = seq;
+                }
+            }
+            int following = (seq + 1) & Triad.MASK;
+            if((rangeStart >= 0) && (!set || (following == 0) || (count == 1))){
+                int end = set ? seq : ((seq - 1) & Triad.MASK);
+                packet.addRange(rangeStart, end - rangeStart);
+                rangeStart = -1;
+            }
+            seq = following;
+        }
+    }
+
+    private void markPending(int seq){
+        if(Triad.distance(this.pendingFrom, seq) < 0){
+            this.pendingFrom = seq;
+        }
+    }
+
+    private boolean get(long[] bits, int seq){
+        int bit = seq & (this.size - 1);
+        return (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private void set(long[] bits, int seq){
+        int bit = seq & (this.size - 1);
+        bits[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clear(long[] bits, int seq){
+        int bit = seq & (this.size - 1);
+        bits[bit >>> 6] &= ~(1L << bit);
+    }
+}
@@ -0,0 +1,151 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.lang.ActorInbox;
+import com.supermarcus.jraklib.lang.BoundedQueue;
+import com.supermarcus.jraklib.lang.OverflowPolicy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Worker threads draining the inboxes of sessions
+ *
+ * - Every session has its own bounded inbox, its events are handled one at a time and in order
+ * - Inboxes of different sessions are drained in parallel by the workers
+ * - Interface threads queue into the inboxes directly, events of sessions do not pass the main thread
+ */
+public class SessionActorPool implements Executor {
+    /**
+     * Default capacity of a session inbox
+     */
+    public static final int DEFAULT_INBOX_CAPACITY = 256;
+
+    /**
+     * Name of the inboxes in overflow reports
+     */
+    public static final String INBOX_NAME = "sessionInbox";
+
+    private ThreadPoolExecutor executor;
+
+    private int threads;
+
+    private int inboxCapacity;
+
+    private OverflowPolicy policy;
+
+    private Consumer<Object> handler;
+
+    private Consumer<Object> discarder;
+
+    private Predicate<Object> discardable;
+
+    private AtomicLong overflows = new AtomicLong(0L);
+
+    private AtomicLong dropped = new AtomicLong(0L);
+
+    /**
+     * @param threads Number of workers
+     * @param inboxCapacity Capacity of each session inbox
+     * @param policy Overflow policy of the inboxes
+     * @param handler Handles the events of every inbox
+     * @param discarder Receives events discarded by an inbox, or null
+     * @param discardable Tells which events an inbox may discard, null if all of them may
+     */
+    public SessionActorPool(int threads, int inboxCapacity, OverflowPolicy policy, Consumer<Object> handler, Consumer<Object> discarder, Predicate<Object> discardable){
+        if(threads < 1){
+            throw new IllegalArgumentException("worker count must be at least 1, got " + threads);
+        }
+        this.threads = threads;
+        this.inboxCapacity = inboxCapacity;
+        this.policy = policy;
+        this.handler = handler;
+        this.discarder = discarder;
+        this.discardable = discardable;
+        final AtomicInteger counter = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Worker(runnable, "RakLib - Session Actor #" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return A new inbox drained by this pool
+     */
+    public ActorInbox<Object> newInbox(){
+        return new ActorInbox<>(this, new BoundedQueue<>(SessionActorPool.INBOX_NAME, this.inboxCapacity, this.policy, event -> {
+            this.dropped.incrementAndGet();
+            if(this.discarder != null){
+                this.discarder.accept(event);
+            }
+        }, this.discardable), this.handler);
+    }
+
+    /**
+     * Queue an event of a session
+     *
+     * @param inbox Inbox of the session
+     * @param event Event to queue
+     */
+    public void offer(ActorInbox<Object> inbox, Object event){
+        inbox.offer(event, !this.isWorkerThread());
+        long overflows = inbox.takeOverflows();
+        if(overflows > 0){
+            this.overflows.addAndGet(overflows);
+        }
+    }
+
+    public void execute(Runnable task){
+        this.executor.execute(task);
+    }
+
+    /**
+     * @return Whether the calling thread is a worker of this pool
+     */
+    public boolean isWorkerThread(){
+        Thread thread = Thread.currentThread();
+        return (thread instanceof Worker) && (((Worker) thread).getPool() == this);
+    }
+
+    public int getThreads(){
+        return this.threads;
+    }
+
+    public int getInboxCapacity(){
+        return this.inboxCapacity;
+    }
+
+    /**
+     * @return Inbox overflows since the last call, 0 if none
+     */
+    public long takeOverflows(){
+        return (this.overflows.get() == 0L) ? 0L : this.overflows.getAndSet(0L);
+    }
+
+    /**
+     * @return Events discarded by the inboxes since the pool was created
+     */
+    public long getDropped(){
+        return this.dropped.get();
+    }
+
+    public void shutdown(){
+        this.executor.shutdown();
+    }
+
+    private class Worker extends Thread {
+        private Worker(Runnable runnable, String name){
+            super(runnable, name);
+        }
+
+        private SessionActorPool getPool(){
+            return SessionActorPool.this;
+        }
+    }
+}
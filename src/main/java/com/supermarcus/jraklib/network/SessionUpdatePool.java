@@ -0,0 +1,205 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.Session;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker threads updating the sessions of interfaces in parallel
+ *
+ * - Sessions are split in stripes by address hash, each stripe is updated by a single worker
+ * - The interface waits until all of its stripes are done, so a session is never touched by two threads at once
+ * - A stripe stops at the tick deadline, the next tick starts with the sessions it did not reach
+ */
+public class SessionUpdatePool {
+    /**
+     * Interfaces with fewer sessions update them on their own thread
+     */
+    public static final int MIN_PARALLEL_SESSIONS = 64;
+
+    /**
+     * Sessions updated between two clock reads of the deadline
+     */
+    public static final int DEADLINE_CHECK = 16;
+
+    private ThreadPoolExecutor executor;
+
+    private int stripeCount;
+
+    private AtomicLong deferredUpdates = new AtomicLong(0L);
+
+    /**
+     * @param threads Number of workers, also the number of stripes
+     */
+    public SessionUpdatePool(int threads){
+        if(threads < 1){
+            throw new IllegalArgumentException("worker count must be at least 1, got " + threads);
+        }
+        this.stripeCount = threads;
+        final AtomicInteger counter = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "RakLib - Session Update Worker #" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the stripe of an address
+     *
+     * @param address Remote address
+     * @param stripes Number of stripes
+     * @return Stripe index
+     */
+    public static int stripeOf(InetSocketAddress address, int stripes){
+        int hash = address.hashCode();//Address xor port, mixed so every bit reaches the low bits
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        hash *= 0xc2b2ae35;
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % stripes;
+    }
+
+    /**
+     * @return Per interface update state, only used by the thread of that interface
+     */
+    public Stripes newStripes(){
+        return new Stripes();
+    }
+
+    /**
+     * Update sessions and wait until every stripe is done or has reached the deadline
+     *
+     * @param stripes State of the calling interface
+     * @param sessions Sessions to update
+     * @param millis Current time
+     * @param deadlineNanos System.nanoTime() the stripes stop at
+     */
+    public void update(Stripes stripes, Collection<Session> sessions, long millis, long deadlineNanos){
+        if(sessions.size() < SessionUpdatePool.MIN_PARALLEL_SESSIONS || this.executor.isShutdown()){
+            for(Session session : sessions){
+                session.update(millis);
+            }
+            return;
+        }
+        stripes.fill(sessions);
+        CountDownLatch done = new CountDownLatch(this.stripeCount);
+        for(int i = 0; i < this.stripeCount; ++i){
+            final int stripe = i;
+            Runnable task = () -> {
+                try{
+                    stripes.run(stripe, millis, deadlineNanos);
+                }finally{
+                    done.countDown();
+                }
+            };
+            try{
+                this.executor.execute(task);
+            }catch (RejectedExecutionException e){//Pool replaced meanwhile
+                task.run();
+            }
+        }
+        boolean interrupted = false;
+        while(true){
+            try{
+                done.await();
+                break;
+            }catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        stripes.clear();
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getStripeCount(){
+        return this.stripeCount;
+    }
+
+    /**
+     * @return Session updates put off to the next tick because a stripe reached its deadline
+     */
+    public long getDeferredUpdates(){
+        return this.deferredUpdates.get();
+    }
+
+    public void shutdown(){
+        this.executor.shutdown();
+    }
+
+    public class Stripes {
+        private ArrayList<Session>[] lists;
+
+        /**
+         * First session a stripe did not reach before its deadline, the lists are rebuilt every tick so it is looked up again
+         */
+        private Session[] resume;
+
+        private int[] cursors;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Stripes(){
+            this.lists = new ArrayList[SessionUpdatePool.this.stripeCount];
+            this.resume = new Session[SessionUpdatePool.this.stripeCount];
+            this.cursors = new int[SessionUpdatePool.this.stripeCount];
+            for(int i = 0; i < this.lists.length; ++i){
+                this.lists[i] = new ArrayList<>();
+            }
+        }
+
+        public SessionUpdatePool getPool(){
+            return SessionUpdatePool.this;
+        }
+
+        private void fill(Collection<Session> sessions){
+            for(Session session : sessions){
+                this.lists[SessionUpdatePool.stripeOf(session.getAddress(), this.lists.length)].add(session);
+            }
+        }
+
+        private void clear(){
+            for(ArrayList<Session> list : this.lists){
+                list.clear();
+            }
+        }
+
+        private void run(int stripe, long millis, long deadlineNanos){
+            ArrayList<Session> list = this.lists[stripe];
+            int size = list.size();
+            if(size == 0){
+                this.resume[stripe] = null;
+                return;
+            }
+            int start = 0;
+            if(this.resume[stripe] != null){
+                start = list.indexOf(this.resume[stripe]);
+                if(start < 0){//Closed meanwhile, start about where it was
+                    start = this.cursors[stripe] % size;
+                }
+            }
+            for(int i = 0; i < size; ++i){
+                if((i > 0) && ((i % SessionUpdatePool.DEADLINE_CHECK) == 0) && ((System.nanoTime() - deadlineNanos) >= 0)){
+                    this.cursors[stripe] = (start + i) % size;
+                    this.resume[stripe] = list.get(this.cursors[stripe]);
+                    SessionUpdatePool.this.deferredUpdates.addAndGet(size - i);
+                    return;
+                }
+                list.get((start + i) % size).update(millis);
+            }
+            this.resume[stripe] = null;
+            this.cursors[stripe] = 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.supermarcus.jraklib.network;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Interfaces sharing one port through SO_REUSEPORT
+ *
+ * - Every remote address is pinned to exactly one shard, datagrams read by another shard are handed off to it
+ */
+public class ShardGroup {
+    private InetSocketAddress bindAddress;
+
+    private RakLibInterface[] shards;
+
+    private ConcurrentLinkedQueue<ReceivedPacket>[] handoff;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardGroup(InetSocketAddress bindAddress, int shardCount){
+        if(shardCount < 1){
+            throw new IllegalArgumentException("shard count must be at least 1, got " + shardCount);
+        }
+        this.bindAddress = bindAddress;
+        this.shards = new RakLibInterface[shardCount];
+        this.handoff = new ConcurrentLinkedQueue[shardCount];
+        for(int i = 0; i < shardCount; ++i){
+            this.handoff[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Get the shard which owns the sessions of an address
+     *
+     * @param address Remote address
+     * @return Shard index
+     */
+    public int shardOf(InetSocketAddress address){
+        int hash = address.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % this.shards.length;
+    }
+
+    public void handoff(int shard, ReceivedPacket packet){
+        this.handoff[shard].offer(packet);
+        RakLibInterface owner = this.shards[shard];
+        if(owner != null){
+            owner.wakeup();
+        }
+    }
+
+    public ReceivedPacket pollHandoff(int shard){
+        return this.handoff[shard].poll();
+    }
+
+    public int getShardCount(){
+        return this.shards.length;
+    }
+
+    public RakLibInterface getShard(int index){
+        return this.shards[index];
+    }
+
+    public RakLibInterface[] getShards(){
+        return this.shards.clone();
+    }
+
+    public InetSocketAddress getBindAddress(){
+        return this.bindAddress;
+    }
+
+    void setShard(int index, RakLibInterface shard){
+        this.shards[index] = shard;
+    }
+}
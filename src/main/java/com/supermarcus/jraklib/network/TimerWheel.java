@@ -0,0 +1,137 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.Session;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel holding the next deadline of every session of an interface
+ *
+ * - A session is registered once, at its earliest deadline, and registers again after it was updated
+ * - Registering a later deadline is ignored, the earlier one fires and the session registers what is left
+ * - Entries which were replaced stay in their slot and are skipped when the slot comes round
+ * - Only the interface thread registers and expires, other threads ask for an update with {@link #wakeup(Session)}
+ */
+public class TimerWheel {
+    /**
+     * Deadline of a session which is not registered
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * Number of slots, each one is a tick long
+     */
+    public static final int SLOTS = 512;
+
+    private final long tickMillis;
+
+    private final ArrayList<Session>[] slots;
+
+    private final ConcurrentLinkedQueue<Session> wakeups = new ConcurrentLinkedQueue<>();
+
+    private final ArrayList<Session> due = new ArrayList<>();
+
+    private long currentTick;
+
+    private int size = 0;
+
+    /**
+     * @param tickMillis Length of a slot in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis){
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList[TimerWheel.SLOTS];
+        for(int i = 0; i < this.slots.length; ++i){
+            this.slots[i] = new ArrayList<>();
+        }
+        this.currentTick = (System.currentTimeMillis() / tickMillis) - 1;
+    }
+
+    /**
+     * Register the next deadline of a session, only called from the interface thread
+     *
+     * @param session Session to register
+     * @param deadline Time the session has to be updated at, Long.MAX_VALUE if it has nothing to wait for
+     */
+    public void schedule(Session session, long deadline){
+        if(deadline == Long.MAX_VALUE){
+            return;
+        }
+        long current = session.getTimerDeadline();
+        if((current != TimerWheel.NONE) && (current <= deadline)){
+            return;
+        }
+        session.setTimerDeadline(deadline);
+        long tick = Math.max(deadline / this.tickMillis, this.currentTick + 1);
+        this.slots[(int) (tick % TimerWheel.SLOTS)].add(session);
+        ++this.size;
+    }
+
+    /**
+     * Ask for a session to be updated on the next expiry, may be called from any thread
+     *
+     * @param session Session to update
+     */
+    public void wakeup(Session session){
+        if(!session.isWakeupQueued()){
+            session.setWakeupQueued(true);
+            this.wakeups.add(session);
+        }
+    }
+
+    /**
+     * Take the sessions whose deadline has passed, only called from the interface thread
+     *
+     * @param millis Current time
+     * @return Due sessions, the list is reused by the next call
+     */
+    public ArrayList<Session> expire(long millis){
+        this.due.clear();
+        Session session;
+        while((session = this.wakeups.poll()) != null){
+            session.setWakeupQueued(false);
+            this.schedule(session, millis);
+        }
+        long nowTick = millis / this.tickMillis;
+        long from = Math.max(this.currentTick + 1, nowTick - TimerWheel.SLOTS + 1);
+        for(long tick = from; tick <= nowTick; ++tick){
+            this.expireSlot((int) (tick % TimerWheel.SLOTS), millis);
+        }
+        if(nowTick > this.currentTick){
+            this.currentTick = nowTick;
+        }
+        return this.due;
+    }
+
+    /**
+     * @return Entries held, replaced ones included
+     */
+    public int size(){
+        return this.size;
+    }
+
+    private void expireSlot(int index, long millis){
+        ArrayList<Session> slot = this.slots[index];
+        int count = slot.size();
+        int kept = 0;
+        for(int i = 0; i < count; ++i){
+            Session session = slot.get(i);
+            long deadline = session.getTimerDeadline();
+            if(deadline == TimerWheel.NONE){
+                continue;//Replaced by an entry which fired already
+            }
+            if((deadline / this.tickMillis) <= (millis / this.tickMillis)){
+                session.setTimerDeadline(TimerWheel.NONE);
+                this.due.add(session);
+            }else if(((deadline / this.tickMillis) % TimerWheel.SLOTS) == index){
+                slot.set(kept++, session);//Due in a later round
+            }
+        }
+        for(int i = count - 1; i >= kept; --i){
+            slot.remove(i);
+        }
+        this.size -= count - kept;
+    }
+}
@@ -0,0 +1,73 @@
+package com.supermarcus.jraklib.network;
+
+import com.supermarcus.jraklib.lang.BinaryConvertible;
+
+import java.net.SocketAddress;
+
+/**
+ * Datagram endpoint of an interface
+ *
+ * - Received datagrams are queued by the transport and polled by the interface thread
+ * - Written datagrams are queued and sent on flush, or at once under FlushPolicy.IMMEDIATE
+ */
+public interface Transport {
+    /**
+     * To queue a packet to send buffer
+     *
+     * @param packet Packet to send
+     */
+    void writePacket(QueuePacket packet);
+
+    /**
+     * To send a packet
+     *
+     * @param packet Packet to send
+     * @param target Target address
+     * @param priority Send priority
+     */
+    void writePacket(BinaryConvertible packet, SocketAddress target, SendPriority priority);
+
+    /**
+     * To send a packet use normal priority
+     *
+     * @param packet Packet to send
+     * @param target Target address
+     */
+    void writePacket(BinaryConvertible packet, SocketAddress target);
+
+    /**
+     * To receive a packet
+     *
+     * The packet must be released once it has been processed
+     *
+     * @return Packet received or null if nothing is queued
+     */
+    ReceivedPacket readPacket();
+
+    /**
+     * Set the callback run after datagrams have been queued, called from the receiving thread
+     *
+     * @param listener Callback or null
+     */
+    void setReceiveListener(Runnable listener);
+
+    /**
+     * Send everything queued, higher priorities first and FIFO within a priority
+     */
+    void flush();
+
+    FlushPolicy getFlushPolicy();
+
+    void setFlushPolicy(FlushPolicy flushPolicy);
+
+    SocketAddress getLocalSocketAddress();
+
+    int getLocalPort();
+
+    boolean isAlive();
+
+    /**
+     * Close the endpoint and stop receiving
+     */
+    void close();
+}
@@ -0,0 +1,20 @@
+package com.supermarcus.jraklib.network;
+
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * Creates the transport of every interface added to a session manager
+ */
+public interface TransportFactory {
+    /**
+     * Bind a transport
+     *
+     * @param bindAddress The address binding on
+     * @param networkManager Network manager of the interface, to count traffic and check blocked addresses
+     * @param reusePort Whether other transports bind the same port with SO_REUSEPORT
+     * @return Bound transport
+     * @throws SocketException
+     */
+    Transport open(InetSocketAddress bindAddress, ChildNetworkManager networkManager, boolean reusePort) throws SocketException;
+}
@@ -0,0 +1,149 @@
+package com.supermarcus.jraklib.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a capture file, oldest first
+ */
+public class CaptureReader implements AutoCloseable {
+    private RandomAccessFile file;
+
+    private ByteBuffer ring;
+
+    private int capacity;
+
+    private long startMillis;
+
+    private long recordCount;
+
+    private long lostRecords;
+
+    private int position;
+
+    private long remaining;
+
+    private long timestamp = 0L;
+
+    private InetSocketAddress address = null;
+
+    private ByteBuffer data = null;
+
+    private byte[] addressV4 = new byte[4];
+
+    private byte[] addressV6 = new byte[16];
+
+    public CaptureReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        MappedByteBuffer mapping = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, this.file.length());
+        if(mapping.capacity() < CaptureRecorder.HEADER_SIZE || mapping.getInt(0) != CaptureRecorder.MAGIC){
+            this.file.close();
+            throw new IOException("Not a capture file: " + file);
+        }
+        if(mapping.getInt(4) != CaptureRecorder.VERSION){
+            this.file.close();
+            throw new IOException("Unsupported capture version " + mapping.getInt(4));
+        }
+        this.startMillis = mapping.getLong(CaptureRecorder.OFFSET_START);
+        this.position = (int) mapping.getLong(CaptureRecorder.OFFSET_HEAD);
+        this.recordCount = mapping.getLong(CaptureRecorder.OFFSET_COUNT);
+        this.lostRecords = mapping.getLong(CaptureRecorder.OFFSET_LOST);
+        this.remaining = this.recordCount;
+        ((Buffer) mapping).position(CaptureRecorder.HEADER_SIZE);
+        this.ring = mapping.slice();
+        this.capacity = this.ring.capacity();
+    }
+
+    /**
+     * Move to the next record
+     *
+     * @return False if there are no more records
+     * @throws IOException If the file is corrupted
+     */
+    public boolean next() throws IOException {
+        if(this.remaining <= 0){
+            return false;
+        }
+        if(this.position >= this.capacity || this.ring.getInt(this.position) == CaptureRecorder.WRAP_MARKER){
+            this.position = 0;
+        }
+        int length = this.ring.getInt(this.position);
+        if(length < CaptureRecorder.RECORD_HEADER_SIZE || this.position + length > this.capacity){
+            throw new IOException("Corrupted record at " + this.position);
+        }
+        ByteBuffer ring = this.ring;
+        ((Buffer) ring).limit(this.position + length);
+        ((Buffer) ring).position(this.position + 4);
+        this.timestamp = ring.getLong();
+        int addressLength = ring.get();
+        byte[] address = addressLength == 16 ? this.addressV6 : this.addressV4;
+        if(addressLength != address.length){
+            throw new IOException("Corrupted address at " + this.position);
+        }
+        ring.get(address);
+        int port = ring.getShort() & 0xffff;
+        if(this.address == null || this.address.getPort() != port || !this.matches(this.address.getAddress(), address)){
+            this.address = new InetSocketAddress(InetAddress.getByAddress(address), port);
+        }
+        this.data = ring.slice();
+        ((Buffer) ring).limit(this.capacity);
+
+        this.position += CaptureRecorder.align(length);
+        --this.remaining;
+        return true;
+    }
+
+    /**
+     * @return Nanos between the start of the capture and the current record
+     */
+    public long getTimestamp(){
+        return this.timestamp;
+    }
+
+    public InetSocketAddress getAddress(){
+        return this.address;
+    }
+
+    /**
+     * @return Datagram of the current record, only valid until {@link #next()}
+     */
+    public ByteBuffer getData(){
+        return this.data;
+    }
+
+    public long getStartMillis(){
+        return this.startMillis;
+    }
+
+    public long getRecordCount(){
+        return this.recordCount;
+    }
+
+    public long getLostRecords(){
+        return this.lostRecords;
+    }
+
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+    private boolean matches(InetAddress current, byte[] address){
+        byte[] bytes = current.getAddress();
+        if(bytes.length != address.length){
+            return false;
+        }
+        for(int i = 0; i < bytes.length; ++i){
+            if(bytes[i] != address[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+}
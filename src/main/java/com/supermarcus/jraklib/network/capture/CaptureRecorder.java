@@ -0,0 +1,197 @@
+package com.supermarcus.jraklib.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records received datagrams into a memory-mapped ring file
+ *
+ * - Every record holds the receive time, the source address and the datagram bytes
+ * - When the ring is full the oldest records are overwritten
+ * - Recording copies into the mapping only, the kernel writes the pages back in the background
+ *
+ * File layout:
+ * - Header: magic, version, capture start in epoch millis, head offset, tail offset, record count, records lost
+ * - Records: length, nanos since start, address length, address, port, data, each record starts 4 byte aligned
+ * - A length of -1 marks the end of the used space before the ring wraps
+ */
+public class CaptureRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x524b4350;
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 64;
+
+    static final int OFFSET_START = 8;
+
+    static final int OFFSET_HEAD = 16;
+
+    static final int OFFSET_TAIL = 24;
+
+    static final int OFFSET_COUNT = 32;
+
+    static final int OFFSET_LOST = 40;
+
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 2;
+
+    static final int WRAP_MARKER = -1;
+
+    private RandomAccessFile file;
+
+    private MappedByteBuffer mapping;
+
+    private ByteBuffer ring;
+
+    private int capacity;
+
+    private long startNanos;
+
+    private int head = 0;
+
+    private int tail = 0;
+
+    private long count = 0L;
+
+    private long lost = 0L;
+
+    private boolean closed = false;
+
+    /**
+     * Create or truncate a capture file
+     *
+     * @param file Capture file
+     * @param capacity Bytes of the ring, the file is this plus the header
+     * @throws IOException
+     */
+    public CaptureRecorder(File file, int capacity) throws IOException {
+        if(capacity < 1024 || capacity > (Integer.MAX_VALUE - CaptureRecorder.HEADER_SIZE)){
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        this.capacity = capacity & ~3;
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0L);
+        this.file.setLength(CaptureRecorder.HEADER_SIZE + this.capacity);
+        this.mapping = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, CaptureRecorder.HEADER_SIZE + this.capacity);
+        ((Buffer) this.mapping).position(CaptureRecorder.HEADER_SIZE);
+        this.ring = this.mapping.slice();
+        this.startNanos = System.nanoTime();
+
+        this.mapping.putInt(0, CaptureRecorder.MAGIC);
+        this.mapping.putInt(4, CaptureRecorder.VERSION);
+        this.mapping.putLong(CaptureRecorder.OFFSET_START, System.currentTimeMillis());
+        this.writeHeader();
+    }
+
+    /**
+     * Append a datagram
+     *
+     * @param from Source address
+     * @param data Datagram between position and limit, the position is left unchanged
+     */
+    public synchronized void record(InetSocketAddress from, ByteBuffer data){
+        if(this.closed){
+            return;
+        }
+        byte[] address = from.getAddress().getAddress();
+        int length = CaptureRecorder.RECORD_HEADER_SIZE + address.length + data.remaining();
+        int size = CaptureRecorder.align(length);
+        if(size > (this.capacity >> 1)){
+            ++this.lost;
+            this.mapping.putLong(CaptureRecorder.OFFSET_LOST, this.lost);
+            return;
+        }
+
+        if(this.tail + size > this.capacity){
+            this.evict(this.tail, this.capacity);
+            this.ring.putInt(this.tail, CaptureRecorder.WRAP_MARKER);
+            this.tail = 0;
+        }
+        this.evict(this.tail, this.tail + size);
+
+        int start = this.tail;
+        ByteBuffer ring = this.ring;
+        ((Buffer) ring).position(start);
+        ring.putInt(length);
+        ring.putLong(System.nanoTime() - this.startNanos);
+        ring.put((byte) address.length);
+        ring.put(address);
+        ring.putShort((short) from.getPort());
+        int position = data.position();
+        ring.put(data);
+        ((Buffer) data).position(position);
+
+        if(this.count == 0){
+            this.head = start;
+        }
+        ++this.count;
+        this.tail = start + size;
+        if(this.tail >= this.capacity){
+            this.tail = 0;
+        }
+        this.writeHeader();
+    }
+
+    public synchronized long getRecordCount(){
+        return this.count;
+    }
+
+    /**
+     * @return Records overwritten by newer ones or too large to record
+     */
+    public synchronized long getLostRecords(){
+        return this.lost;
+    }
+
+    public int getCapacity(){
+        return this.capacity;
+    }
+
+    /**
+     * Write everything to the file and stop recording
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if(!this.closed){
+            this.closed = true;
+            this.mapping.force();
+            this.file.close();
+        }
+    }
+
+    /**
+     * Drop the oldest records while they overlap [from, to)
+     */
+    private void evict(int from, int to){
+        while(this.count > 0 && this.head >= from && this.head < to){
+            int length = this.ring.getInt(this.head);
+            if(length == CaptureRecorder.WRAP_MARKER){
+                this.head = 0;
+                continue;
+            }
+            this.head += CaptureRecorder.align(length);
+            if(this.head >= this.capacity){
+                this.head = 0;
+            }
+            --this.count;
+            ++this.lost;
+        }
+    }
+
+    static int align(int length){
+        return (length + 3) & ~3;
+    }
+
+    private void writeHeader(){
+        this.mapping.putLong(CaptureRecorder.OFFSET_HEAD, this.head);
+        this.mapping.putLong(CaptureRecorder.OFFSET_TAIL, this.tail);
+        this.mapping.putLong(CaptureRecorder.OFFSET_COUNT, this.count);
+        this.mapping.putLong(CaptureRecorder.OFFSET_LOST, this.lost);
+    }
+}
@@ -0,0 +1,71 @@
+package com.supermarcus.jraklib.network.capture;
+
+import com.supermarcus.jraklib.network.ChildNetworkManager;
+import com.supermarcus.jraklib.network.Transport;
+import com.supermarcus.jraklib.network.TransportFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * Replays a capture file into the interfaces of a session manager
+ *
+ * - Install it as the transport factory, every interface added afterwards replays the capture on its own
+ */
+public class CaptureReplay implements TransportFactory {
+    /**
+     * Replay at the captured rate
+     */
+    public static final double REAL_TIME = 1.0;
+
+    /**
+     * Replay as fast as the interface takes the datagrams
+     */
+    public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+    private File capture;
+
+    private double speed;
+
+    private ReplayTransport lastTransport = null;
+
+    public CaptureReplay(File capture){
+        this(capture, CaptureReplay.REAL_TIME);
+    }
+
+    /**
+     * @param capture Capture file to replay
+     * @param speed Multiple of the original speed, 0 to replay as fast as possible
+     */
+    public CaptureReplay(File capture, double speed){
+        this.capture = capture;
+        this.speed = speed;
+    }
+
+    public Transport open(InetSocketAddress bindAddress, ChildNetworkManager networkManager, boolean reusePort) throws SocketException {
+        try{
+            ReplayTransport transport = new ReplayTransport(this.capture, bindAddress, networkManager, this.speed);
+            synchronized (this){
+                this.lastTransport = transport;
+            }
+            return transport;
+        }catch (IOException e){
+            SocketException exception = new SocketException("Unable to replay " + this.capture + ": " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * @return Transport of the interface added last, or null
+     */
+    public synchronized ReplayTransport getLastTransport(){
+        return this.lastTransport;
+    }
+
+    public double getSpeed(){
+        return this.speed;
+    }
+}
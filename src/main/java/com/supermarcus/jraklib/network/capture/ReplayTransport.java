@@ -0,0 +1,229 @@
+package com.supermarcus.jraklib.network.capture;
+
+import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.lang.RingBuffer;
+import com.supermarcus.jraklib.lang.message.server.InterfaceInterruptMessage;
+import com.supermarcus.jraklib.network.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport feeding the datagrams of a capture file to an interface
+ *
+ * - A replay thread reads the capture and queues the datagrams with their original spacing divided by the speed
+ * - With a speed of 0 the datagrams are queued as fast as the interface takes them
+ * - Everything the interface sends is counted and discarded
+ */
+public class ReplayTransport implements Transport {
+    public static final int RECEIVE_QUEUE_SIZE = 65536;
+
+    private InetSocketAddress address;
+
+    private ChildNetworkManager manager;
+
+    private double speed;
+
+    volatile private boolean alive = true;
+
+    volatile private FlushPolicy flushPolicy = FlushPolicy.PER_TICK;
+
+    volatile private Runnable receiveListener = null;
+
+    private RingBuffer<ReceivedPacket> receiveBuffer = new RingBuffer<>(ReplayTransport.RECEIVE_QUEUE_SIZE);
+
+    private BufferArena arena = new BufferArena(false);
+
+    private AtomicLong replayedPackets = new AtomicLong(0L);
+
+    private AtomicLong sentPackets = new AtomicLong(0L);
+
+    private AtomicLong sentBytes = new AtomicLong(0L);
+
+    private CountDownLatch finished = new CountDownLatch(1);
+
+    private Thread thread;
+
+    /**
+     * @param capture Capture file to replay
+     * @param address Address the interface appears to be bound on
+     * @param networkManager Network manager of the interface
+     * @param speed Multiple of the original speed, 0 to replay as fast as possible
+     * @throws IOException If the capture can not be read
+     */
+    public ReplayTransport(File capture, InetSocketAddress address, ChildNetworkManager networkManager, double speed) throws IOException {
+        this.address = address;
+        this.manager = networkManager;
+        this.speed = speed;
+        final CaptureReader reader = new CaptureReader(capture);
+        this.thread = new Thread(){
+            public void run(){
+                try{
+                    ReplayTransport.this.replay(reader);
+                }catch (IOException e){
+                    ReplayTransport.this.onReplayError(e);
+                }finally{
+                    try{
+                        reader.close();
+                    }catch (IOException ignore){}
+                    ReplayTransport.this.finished.countDown();
+                }
+            }
+        };
+        this.thread.setName("RakLib Capture Replay - " + capture.getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * A capture that can not be read any more ends the replay, the interface is told like of any other interrupt
+     */
+    private void onReplayError(IOException e){
+        if((this.manager != null) && (this.manager.getOwner() != null)){
+            RakLibInterface owner = this.manager.getOwner();
+            owner.getSessionManager().queueMessage(new InterfaceInterruptMessage(e, owner));
+        }
+    }
+
+    public void writePacket(QueuePacket packet){
+        DatagramPacket datagram = packet.getPacket();
+        this.sentPackets.incrementAndGet();
+        this.sentBytes.addAndGet(datagram.getLength());
+        if(this.manager != null){
+            this.manager.onSocketSend(datagram.getLength());
+        }
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target, SendPriority priority){
+        try{
+            byte[] data = packet.toBinary();
+            this.writePacket(new QueuePacket(new DatagramPacket(data, data.length, target), priority));
+        }catch (Exception ignore){}
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target){
+        this.writePacket(packet, target, SendPriority.NORMAL);
+    }
+
+    public ReceivedPacket readPacket(){
+        return this.receiveBuffer.poll();
+    }
+
+    public void setReceiveListener(Runnable listener){
+        this.receiveListener = listener;
+    }
+
+    public void flush(){}
+
+    public FlushPolicy getFlushPolicy(){
+        return this.flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        this.flushPolicy = flushPolicy;
+    }
+
+    public InetSocketAddress getLocalSocketAddress(){
+        return this.address;
+    }
+
+    public int getLocalPort(){
+        return this.address.getPort();
+    }
+
+    public boolean isAlive(){
+        return this.alive;
+    }
+
+    public void close(){
+        this.alive = false;
+        LockSupport.unpark(this.thread);
+        try{
+            this.thread.join();
+        }catch (InterruptedException ignore){}
+        ReceivedPacket packet;
+        while((packet = this.receiveBuffer.poll()) != null){
+            packet.release();
+        }
+    }
+
+    /**
+     * Wait until every datagram of the capture has been queued
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return False if the timeout elapsed first
+     * @throws InterruptedException
+     */
+    public boolean awaitReplay(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.finished.await(timeout, unit);
+    }
+
+    public boolean isReplayFinished(){
+        return this.finished.getCount() == 0;
+    }
+
+    /**
+     * @return Datagrams queued to the interface so far
+     */
+    public long getReplayedPackets(){
+        return this.replayedPackets.get();
+    }
+
+    /**
+     * @return Datagrams the interface sent back
+     */
+    public long getSentPackets(){
+        return this.sentPackets.get();
+    }
+
+    public long getSentBytes(){
+        return this.sentBytes.get();
+    }
+
+    private void replay(CaptureReader reader) throws IOException {
+        long first = -1L;
+        long startNanos = System.nanoTime();
+        while(this.alive && reader.next()){
+            if(this.speed > 0){
+                if(first < 0){
+                    first = reader.getTimestamp();
+                }
+                long due = startNanos + (long) ((reader.getTimestamp() - first) / this.speed);
+                long wait;
+                while(this.alive && (wait = due - System.nanoTime()) > 0){
+                    LockSupport.parkNanos(wait);
+                }
+            }
+
+            InetSocketAddress from = reader.getAddress();
+            int length = reader.getData().remaining();
+            if(length == 0 || (this.manager != null && this.manager.isAddressBlocked(from.getAddress()))){
+                continue;
+            }
+            if(this.manager != null){
+                this.manager.onSocketRead(length, from);
+            }
+            ReceivedPacket packet = this.arena.copy(reader.getData(), from);
+            while(!this.receiveBuffer.offer(packet)){
+                if(!this.alive){
+                    packet.release();
+                    return;
+                }
+                Thread.yield();
+            }
+            this.replayedPackets.incrementAndGet();
+            Runnable listener = this.receiveListener;
+            if(listener != null){
+                listener.run();
+            }
+        }
+    }
+}
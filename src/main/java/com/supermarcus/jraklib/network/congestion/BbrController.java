@@ -0,0 +1,180 @@
+package com.supermarcus.jraklib.network.congestion;
+
+import com.supermarcus.jraklib.network.ReliableManager;
+
+/**
+ * Window sized from a model of the path in the way of BBR
+ *
+ * - The bottleneck bandwidth is the highest delivery rate of the last BANDWIDTH_SAMPLES samples
+ * - The propagation delay is the lowest RTT seen in the last MIN_RTT_WINDOW nanoseconds
+ * - Startup opens the window by the acknowledged bytes until the bandwidth stops growing by a quarter for STARTUP_ROUNDS samples
+ * - The window is then CWND_GAIN bandwidth-delay products, the pacing rate cycles around the bandwidth to probe for more
+ * - Losses do not shrink the window, a retransmission timeout closes it until the next ACK
+ */
+public class BbrController implements CongestionController {
+    public static final CongestionControllerFactory FACTORY = BbrController::new;
+
+    public static final int INITIAL_WINDOW = 10;
+
+    public static final int MIN_WINDOW = 4;
+
+    public static final int BANDWIDTH_SAMPLES = 10;
+
+    public static final long MIN_RTT_WINDOW = 10 * 1000 * 1000 * 1000L;
+
+    /**
+     * Samples without a quarter more bandwidth which end the startup
+     */
+    public static final int STARTUP_ROUNDS = 3;
+
+    /**
+     * Pacing gain of the startup, 2/ln(2)
+     */
+    public static final double STARTUP_GAIN = 2.885;
+
+    public static final double CWND_GAIN = 2.0;
+
+    /**
+     * Pacing gains cycled through after the startup, one per propagation delay
+     */
+    public static final double[] PACING_GAIN_CYCLE = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+
+    private int mtuSize;
+
+    private long congestionWindow;
+
+    private boolean startup = true;
+
+    private int startupRounds = 0;
+
+    private long fullBandwidth = 0L;
+
+    private final long[] bandwidthSamples = new long[BbrController.BANDWIDTH_SAMPLES];
+
+    private int bandwidthIndex = 0;
+
+    private long bandwidth = 0L;
+
+    private long minRtt = -1L;
+
+    private long minRttStamp = 0L;
+
+    private long deliveredBytes = 0L;
+
+    private long sampleStart;
+
+    private long sampleBytes = 0L;
+
+    private int cycleIndex = 0;
+
+    private long cycleStart;
+
+    /**
+     * @param mtuSize MTU of the session
+     */
+    public BbrController(int mtuSize){
+        this.mtuSize = mtuSize;
+        this.congestionWindow = (long) mtuSize * BbrController.INITIAL_WINDOW;
+        this.sampleStart = this.cycleStart = System.nanoTime();
+    }
+
+    public boolean canSend(long bytesInFlight, int bytes){
+        return (bytesInFlight + bytes) <= this.congestionWindow;
+    }
+
+    public void onAck(int bytes, long rttNanos, long bytesInFlight, long nanos){
+        if((this.minRtt < 0) || (rttNanos <= this.minRtt) || ((nanos - this.minRttStamp) > BbrController.MIN_RTT_WINDOW)){
+            this.minRtt = rttNanos;
+            this.minRttStamp = nanos;
+        }
+        this.deliveredBytes += bytes;
+        long elapsed = nanos - this.sampleStart;
+        if(elapsed >= Math.max(this.minRtt, ReliableManager.MIN_RATE_INTERVAL_NANOS)){
+            this.onBandwidthSample((this.deliveredBytes - this.sampleBytes) * 1000000000L / elapsed);
+            this.sampleStart = nanos;
+            this.sampleBytes = this.deliveredBytes;
+        }
+        if(this.startup){
+            this.congestionWindow += bytes;
+        }else{
+            if((nanos - this.cycleStart) >= this.minRtt){
+                this.cycleIndex = (this.cycleIndex + 1) % BbrController.PACING_GAIN_CYCLE.length;
+                this.cycleStart = nanos;
+            }
+            this.congestionWindow = (long) (this.getBandwidthDelayProduct() * BbrController.CWND_GAIN);
+        }
+        this.congestionWindow = Math.max(this.getMinWindow(), Math.min(this.congestionWindow, (long) this.mtuSize * ReliableManager.WINDOW_SIZE));
+    }
+
+    public void onLoss(int bytes, long sentNanos, long nanos){
+        //The model only follows delivery rate and delay, the retransmit is sent within the window
+    }
+
+    public void onTimeout(long nanos){
+        this.congestionWindow = this.getMinWindow();
+    }
+
+    public long getCongestionWindow(){
+        return this.congestionWindow;
+    }
+
+    public long getPacingRate(){
+        if(this.bandwidth <= 0){
+            return -1L;
+        }
+        return (long) (this.bandwidth * (this.startup ? BbrController.STARTUP_GAIN : BbrController.PACING_GAIN_CYCLE[this.cycleIndex]));
+    }
+
+    /**
+     * @return Estimated bottleneck bandwidth in bytes per second, 0 before the first sample
+     */
+    public long getBandwidth(){
+        return this.bandwidth;
+    }
+
+    /**
+     * @return Lowest recent round trip time in nanoseconds, or -1 before the first ACK
+     */
+    public long getMinRtt(){
+        return this.minRtt;
+    }
+
+    /**
+     * @return Whether the controller still searches for the bandwidth
+     */
+    public boolean isStartup(){
+        return this.startup;
+    }
+
+    public void setMtuSize(int mtuSize){
+        this.mtuSize = mtuSize;
+        this.congestionWindow = Math.max(this.congestionWindow, this.getMinWindow());
+    }
+
+    private void onBandwidthSample(long rate){
+        this.bandwidthSamples[this.bandwidthIndex] = rate;
+        this.bandwidthIndex = (this.bandwidthIndex + 1) % this.bandwidthSamples.length;
+        long max = 0L;
+        for(long sample : this.bandwidthSamples){
+            max = Math.max(max, sample);
+        }
+        this.bandwidth = max;
+        if(this.startup){
+            if(this.bandwidth >= (this.fullBandwidth + (this.fullBandwidth / 4))){
+                this.fullBandwidth = this.bandwidth;
+                this.startupRounds = 0;
+            }else if(++this.startupRounds >= BbrController.STARTUP_ROUNDS){
+                this.startup = false;
+                this.cycleStart = this.sampleStart;
+            }
+        }
+    }
+
+    private long getBandwidthDelayProduct(){
+        return (this.bandwidth * Math.max(this.minRtt, 0L)) / 1000000000L;
+    }
+
+    private long getMinWindow(){
+        return (long) this.mtuSize * BbrController.MIN_WINDOW;
+    }
+}
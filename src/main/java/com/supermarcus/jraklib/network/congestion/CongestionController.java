@@ -0,0 +1,55 @@
+package com.supermarcus.jraklib.network.congestion;
+
+/**
+ * Decides how many bytes a session may have in flight
+ *
+ * - Every datagram, retransmits included, waits for the controller before it is sent
+ * - A session without bytes in flight always sends its next datagram, so a small window can not stall it
+ * - Only used by the interface thread of the session
+ */
+public interface CongestionController {
+    /**
+     * @param bytesInFlight Bytes sent and not acknowledged yet
+     * @param bytes Size of the next datagram
+     * @return Whether the datagram may be sent now
+     */
+    boolean canSend(long bytesInFlight, int bytes);
+
+    /**
+     * A datagram was acknowledged
+     *
+     * @param bytes Size of the datagram
+     * @param rttNanos Round trip time of the datagram
+     * @param bytesInFlight Bytes in flight before the datagram was acknowledged
+     * @param nanos Current System.nanoTime()
+     */
+    void onAck(int bytes, long rttNanos, long bytesInFlight, long nanos);
+
+    /**
+     * A datagram was reported lost by a NACK
+     *
+     * @param bytes Size of the datagram
+     * @param sentNanos System.nanoTime() when the datagram was sent
+     * @param nanos Current System.nanoTime()
+     */
+    void onLoss(int bytes, long sentNanos, long nanos);
+
+    /**
+     * The retransmission timeout expired
+     *
+     * @param nanos Current System.nanoTime()
+     */
+    void onTimeout(long nanos);
+
+    /**
+     * @return Congestion window in bytes
+     */
+    long getCongestionWindow();
+
+    /**
+     * @return Rate the pacer of the session should use in bytes per second, or -1 to leave it to the pacer
+     */
+    long getPacingRate();
+
+    void setMtuSize(int mtuSize);
+}
@@ -0,0 +1,12 @@
+package com.supermarcus.jraklib.network.congestion;
+
+/**
+ * Creates the congestion controller of every session of an interface
+ */
+public interface CongestionControllerFactory {
+    /**
+     * @param mtuSize MTU of the session
+     * @return New controller
+     */
+    CongestionController create(int mtuSize);
+}
@@ -0,0 +1,105 @@
+package com.supermarcus.jraklib.network.congestion;
+
+import com.supermarcus.jraklib.network.ReliableManager;
+
+/**
+ * Sliding window in the way of RakNet and TCP Reno
+ *
+ * - Slow start opens the window by the acknowledged bytes until it reaches the threshold
+ * - Congestion avoidance then opens it by about one datagram per round trip
+ * - A NACK halves the window once per round trip, losses of datagrams sent before the last cut are ignored
+ * - A retransmission timeout closes the window to the minimum and starts over with slow start
+ * - The window only grows while the session uses at least half of it
+ */
+public class SlidingWindowController implements CongestionController {
+    public static final CongestionControllerFactory FACTORY = SlidingWindowController::new;
+
+    /**
+     * Initial window in datagrams of the MTU size
+     */
+    public static final int INITIAL_WINDOW = 10;
+
+    /**
+     * Smallest window in datagrams of the MTU size
+     */
+    public static final int MIN_WINDOW = 2;
+
+    private int mtuSize;
+
+    private long congestionWindow;
+
+    private long slowStartThreshold = Long.MAX_VALUE;
+
+    /**
+     * System.nanoTime() of the last window cut
+     */
+    private long recoveryStart;
+
+    /**
+     * @param mtuSize MTU of the session
+     */
+    public SlidingWindowController(int mtuSize){
+        this.mtuSize = mtuSize;
+        this.congestionWindow = (long) mtuSize * SlidingWindowController.INITIAL_WINDOW;
+        this.recoveryStart = System.nanoTime();
+    }
+
+    public boolean canSend(long bytesInFlight, int bytes){
+        return (bytesInFlight + bytes) <= this.congestionWindow;
+    }
+
+    public void onAck(int bytes, long rttNanos, long bytesInFlight, long nanos){
+        if((bytesInFlight * 2) < this.congestionWindow){
+            return;//Not limited by the window, growing it would not be backed by a measurement
+        }
+        if(this.congestionWindow < this.slowStartThreshold){
+            this.congestionWindow += bytes;
+        }else{
+            this.congestionWindow += Math.max(1L, ((long) this.mtuSize * bytes) / this.congestionWindow);
+        }
+        this.congestionWindow = Math.min(this.congestionWindow, this.getMaxWindow());
+    }
+
+    public void onLoss(int bytes, long sentNanos, long nanos){
+        if((sentNanos - this.recoveryStart) <= 0){
+            return;//Sent before the last cut, the window was already reduced for it
+        }
+        this.recoveryStart = nanos;
+        this.slowStartThreshold = Math.max(this.congestionWindow / 2, this.getMinWindow());
+        this.congestionWindow = this.slowStartThreshold;
+    }
+
+    public void onTimeout(long nanos){
+        this.recoveryStart = nanos;
+        this.slowStartThreshold = Math.max(this.congestionWindow / 2, this.getMinWindow());
+        this.congestionWindow = this.getMinWindow();
+    }
+
+    public long getCongestionWindow(){
+        return this.congestionWindow;
+    }
+
+    public long getPacingRate(){
+        return -1L;
+    }
+
+    /**
+     * @return Slow start threshold in bytes, Long.MAX_VALUE before the first loss
+     */
+    public long getSlowStartThreshold(){
+        return this.slowStartThreshold;
+    }
+
+    public void setMtuSize(int mtuSize){
+        this.mtuSize = mtuSize;
+        this.congestionWindow = Math.max(this.congestionWindow, this.getMinWindow());
+    }
+
+    private long getMinWindow(){
+        return (long) this.mtuSize * SlidingWindowController.MIN_WINDOW;
+    }
+
+    private long getMaxWindow(){
+        return (long) this.mtuSize * ReliableManager.WINDOW_SIZE;
+    }
+}
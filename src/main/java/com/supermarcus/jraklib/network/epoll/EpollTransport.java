@@ -0,0 +1,312 @@
+package com.supermarcus.jraklib.network.epoll;
+
+import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.network.*;
+import com.supermarcus.jraklib.network.capture.CaptureRecorder;
+import com.supermarcus.jraklib.protocol.Packet;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.SegmentedDatagramPacket;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Transport on the Netty native epoll datagram channel, Linux only
+ *
+ * - Datagrams are received in batches with recvmmsg
+ * - Datagrams flushed together are sent with sendmmsg
+ * - Consecutive datagrams to the same address are coalesced into one UDP GSO send when the kernel supports it
+ */
+public class EpollTransport implements Transport {
+    /**
+     * Largest datagram received, RakNet datagrams never exceed the MTU
+     */
+    public static final int MAX_DATAGRAM_PAYLOAD_SIZE = 2048;
+
+    /**
+     * Datagrams read by a single recvmmsg call
+     */
+    public static final int RECEIVE_BATCH_SIZE = 32;
+
+    /**
+     * Segments the kernel accepts in a single GSO send
+     */
+    public static final int MAX_SEGMENTS = 64;
+
+    private ChildNetworkManager manager;
+
+    private EventLoopGroup group;
+
+    private Channel channel;
+
+    private BufferArena arena;
+
+    private boolean segmentation;
+
+    volatile private FlushPolicy flushPolicy = FlushPolicy.PER_TICK;
+
+    private SendQueue sendQueue = new SendQueue(SendQueue.RING_CAPACITY);
+
+    volatile private CaptureRecorder recorder = null;
+
+    volatile private Runnable receiveListener = null;
+
+    private ConcurrentLinkedQueue<ReceivedPacket> receiveBuffer = new ConcurrentLinkedQueue<>();
+
+    private AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private SegmentBatcher batcher = new SegmentBatcher();
+
+    private Runnable drainTask = () -> {
+        EpollTransport.this.flushScheduled.set(false);
+        EpollTransport.this.sendQueue.drain(EpollTransport.this.batcher);
+        EpollTransport.this.batcher.finish();
+        EpollTransport.this.channel.flush();
+    };
+
+    /**
+     * @param bindAddress The address binding on
+     * @param networkManager Network manager of the owner interface
+     * @param reusePort Whether to set SO_REUSEPORT
+     * @param directBuffers Whether the receive arena uses direct buffers
+     * @param segmentation Whether to use UDP GSO if the kernel supports it
+     * @throws SocketException
+     */
+    public EpollTransport(InetSocketAddress bindAddress, ChildNetworkManager networkManager, boolean reusePort, boolean directBuffers, boolean segmentation) throws SocketException {
+        this.manager = networkManager;
+        this.arena = new BufferArena(directBuffers);
+        this.segmentation = segmentation && EpollDatagramChannel.isSegmentedDatagramPacketSupported();
+        this.group = new EpollEventLoopGroup(1, new DefaultThreadFactory("RakLib Epoll Transport - " + bindAddress));
+        try{
+            this.channel = new Bootstrap()
+                    .group(this.group)
+                    .channel(EpollDatagramChannel.class)
+                    .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, EpollTransport.MAX_DATAGRAM_PAYLOAD_SIZE)
+                    .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(EpollTransport.MAX_DATAGRAM_PAYLOAD_SIZE * EpollTransport.RECEIVE_BATCH_SIZE))
+                    .option(ChannelOption.SO_RCVBUF, Packet.MAX_SIZE)
+                    .option(ChannelOption.SO_SNDBUF, Packet.MAX_SIZE)
+                    .option(UnixChannelOption.SO_REUSEPORT, reusePort)
+                    .handler(new ReceiveHandler())
+                    .bind(bindAddress)
+                    .syncUninterruptibly()
+                    .channel();
+        }catch (Exception e){
+            this.group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+            SocketException exception = new SocketException("Unable to bind " + bindAddress + ": " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    public void writePacket(QueuePacket packet){
+        this.sendQueue.offer(packet, this::drainNow);
+        if(this.flushPolicy == FlushPolicy.IMMEDIATE){
+            this.flush();
+        }
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target, SendPriority priority){
+        try{
+            byte[] data = packet.toBinary();
+            DatagramPacket dPacket = new DatagramPacket(data, data.length, target);
+            this.writePacket(new QueuePacket(dPacket, priority));
+        }catch (Exception ignore){}
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target){
+        this.writePacket(packet, target, SendPriority.NORMAL);
+    }
+
+    public ReceivedPacket readPacket(){
+        return this.receiveBuffer.poll();
+    }
+
+    public void setReceiveListener(Runnable listener){
+        this.receiveListener = listener;
+    }
+
+    /**
+     * Hand everything queued to the event loop, it is written with a single sendmmsg
+     */
+    public void flush(){
+        if(this.sendQueue.size() > 0 && this.flushScheduled.compareAndSet(false, true)){
+            this.channel.eventLoop().execute(this.drainTask);
+        }
+    }
+
+    public FlushPolicy getFlushPolicy(){
+        return this.flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        this.flushPolicy = flushPolicy;
+    }
+
+    public SocketAddress getLocalSocketAddress(){
+        return this.channel.localAddress();
+    }
+
+    public int getLocalPort(){
+        return ((InetSocketAddress) this.channel.localAddress()).getPort();
+    }
+
+    public boolean isAlive(){
+        return this.channel.isActive();
+    }
+
+    public void close(){
+        this.channel.close().syncUninterruptibly();
+        this.group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        ReceivedPacket packet;
+        while((packet = this.receiveBuffer.poll()) != null){
+            packet.release();
+        }
+    }
+
+    public BufferArena getArena(){
+        return this.arena;
+    }
+
+    public CaptureRecorder getCaptureRecorder(){
+        return this.recorder;
+    }
+
+    /**
+     * Record every datagram passed to the interface, null stops recording
+     *
+     * @param recorder Recorder to append to
+     */
+    public void setCaptureRecorder(CaptureRecorder recorder){
+        this.recorder = recorder;
+    }
+
+    public boolean isSegmentation(){
+        return this.segmentation;
+    }
+
+    /**
+     * @return Datagrams dropped because their send ring stayed full
+     */
+    public long getDroppedPackets(){
+        return this.sendQueue.getDroppedPackets();
+    }
+
+    public int getQueuedPackets(){
+        return this.sendQueue.size();
+    }
+
+    /**
+     * Drain on the event loop and wait for it, used when a send ring is full
+     */
+    private void drainNow(){
+        EventLoop loop = this.channel.eventLoop();
+        if(loop.inEventLoop()){
+            this.drainTask.run();
+        }else{
+            loop.submit(this.drainTask).awaitUninterruptibly();
+        }
+    }
+
+    private class ReceiveHandler extends SimpleChannelInboundHandler<io.netty.channel.socket.DatagramPacket> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, io.netty.channel.socket.DatagramPacket packet){
+            InetSocketAddress from = packet.sender();
+            ByteBuf content = packet.content();
+            int length = content.readableBytes();
+            if((length > 0) && (!EpollTransport.this.manager.isAddressBlocked(from.getAddress()))){
+                EpollTransport.this.manager.onSocketRead(length, from);
+                ReceivedPacket received = EpollTransport.this.arena.copy(content.nioBuffer(), from);
+                CaptureRecorder recorder = EpollTransport.this.recorder;
+                if(recorder != null){
+                    recorder.record(from, received.getData());
+                }
+                EpollTransport.this.receiveBuffer.add(received);
+                Runnable listener = EpollTransport.this.receiveListener;
+                if(listener != null){
+                    listener.run();
+                }
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause){}
+    }
+
+    /**
+     * Writes drained datagrams to the channel, only used on the event loop
+     *
+     * - Datagrams to the same address are appended as segments while they have the size of the first one
+     * - A shorter datagram ends the batch, as only the last GSO segment may be shorter
+     */
+    private class SegmentBatcher implements Consumer<QueuePacket> {
+        private ByteBuf segments = null;
+
+        private InetSocketAddress recipient = null;
+
+        private int segmentSize = 0;
+
+        private int count = 0;
+
+        private boolean sealed = false;
+
+        public void accept(QueuePacket queuePacket){
+            DatagramPacket packet = queuePacket.getPacket();
+            InetSocketAddress target = (InetSocketAddress) packet.getSocketAddress();
+            int length = packet.getLength();
+            EpollTransport.this.manager.onSocketSend(length);
+
+            if(!EpollTransport.this.segmentation){
+                this.write(new io.netty.channel.socket.DatagramPacket(Unpooled.wrappedBuffer(packet.getData(), packet.getOffset(), length), target));
+                return;
+            }
+
+            if((this.segments != null) && !this.sealed && (this.count < EpollTransport.MAX_SEGMENTS) &&
+                    (length <= this.segmentSize) && target.equals(this.recipient) &&
+                    ((this.segments.readableBytes() + length) <= ProtocolSocket.MAX_DATAGRAM_SIZE)){
+                this.segments.writeBytes(packet.getData(), packet.getOffset(), length);
+                ++this.count;
+                this.sealed = (length < this.segmentSize);
+                return;
+            }
+
+            this.finish();
+            this.segments = EpollTransport.this.channel.alloc().ioBuffer(length * 4, ProtocolSocket.MAX_DATAGRAM_SIZE);
+            this.segments.writeBytes(packet.getData(), packet.getOffset(), length);
+            this.recipient = target;
+            this.segmentSize = length;
+            this.count = 1;
+            this.sealed = false;
+        }
+
+        public void finish(){
+            if(this.segments != null){
+                if(this.count > 1){
+                    this.write(new SegmentedDatagramPacket(this.segments, this.segmentSize, this.recipient));
+                }else{
+                    this.write(new io.netty.channel.socket.DatagramPacket(this.segments, this.recipient));
+                }
+                this.segments = null;
+                this.recipient = null;
+            }
+        }
+
+        private void write(Object message){
+            Channel channel = EpollTransport.this.channel;
+            channel.write(message, channel.voidPromise());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.supermarcus.jraklib.network.epoll;
+
+import com.supermarcus.jraklib.network.ChildNetworkManager;
+import com.supermarcus.jraklib.network.Transport;
+import com.supermarcus.jraklib.network.TransportFactory;
+import io.netty.channel.epoll.Epoll;
+
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * Creates epoll transports
+ *
+ * - Netty native epoll has to be on the class path, check {@link #isAvailable()} before installing the factory
+ */
+public class EpollTransportFactory implements TransportFactory {
+    private boolean directBuffers;
+
+    private boolean segmentation;
+
+    public EpollTransportFactory(){
+        this(true, true);
+    }
+
+    /**
+     * @param directBuffers Whether the receive arena uses direct buffers
+     * @param segmentation Whether to use UDP GSO if the kernel supports it
+     */
+    public EpollTransportFactory(boolean directBuffers, boolean segmentation){
+        this.directBuffers = directBuffers;
+        this.segmentation = segmentation;
+    }
+
+    public Transport open(InetSocketAddress bindAddress, ChildNetworkManager networkManager, boolean reusePort) throws SocketException {
+        if(!Epoll.isAvailable()){
+            SocketException exception = new SocketException("Native epoll transport is not available");
+            exception.initCause(Epoll.unavailabilityCause());
+            throw exception;
+        }
+        return new EpollTransport(bindAddress, networkManager, reusePort, this.directBuffers, this.segmentation);
+    }
+
+    /**
+     * @return Whether the native epoll transport can be loaded on this system
+     */
+    public static boolean isAvailable(){
+        try{
+            return Epoll.isAvailable();
+        }catch (Throwable t){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.supermarcus.jraklib.network.loopback;
+
+import com.supermarcus.jraklib.network.ChildNetworkManager;
+import com.supermarcus.jraklib.network.FlushPolicy;
+import com.supermarcus.jraklib.network.Transport;
+import com.supermarcus.jraklib.network.TransportFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process datagram network
+ *
+ * - Install it as the transport factory of a session manager, interfaces bind loopback transports on it
+ * - Clients bind their own endpoints with {@link #bind(InetSocketAddress)} and exchange datagrams without a socket
+ * - Datagrams to an address nobody is bound on are dropped, an endpoint bound on the wildcard address receives for every address
+ */
+public class LoopbackNetwork implements TransportFactory {
+    public static final int FIRST_EPHEMERAL_PORT = 49152;
+
+    private ConcurrentHashMap<InetSocketAddress, LoopbackTransport> endpoints = new ConcurrentHashMap<>();
+
+    private AtomicInteger nextPort = new AtomicInteger(LoopbackNetwork.FIRST_EPHEMERAL_PORT);
+
+    private AtomicLong deliveredPackets = new AtomicLong(0L);
+
+    private AtomicLong droppedPackets = new AtomicLong(0L);
+
+    public Transport open(InetSocketAddress bindAddress, ChildNetworkManager networkManager, boolean reusePort) throws SocketException {
+        return this.register(bindAddress, networkManager, FlushPolicy.PER_TICK);
+    }
+
+    /**
+     * Bind a client endpoint, it sends as soon as a packet is written
+     *
+     * @param bindAddress Address to bind, port 0 picks a free port
+     * @return Bound endpoint
+     * @throws SocketException If the address is in use
+     */
+    public LoopbackTransport bind(InetSocketAddress bindAddress) throws SocketException {
+        return this.register(bindAddress, null, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Bind a client endpoint on a free port of the loopback address
+     *
+     * @return Bound endpoint
+     * @throws SocketException
+     */
+    public LoopbackTransport bind() throws SocketException {
+        return this.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    public LoopbackTransport getEndpoint(InetSocketAddress address){
+        return this.endpoints.get(address);
+    }
+
+    /**
+     * @return Datagrams handed to a bound endpoint
+     */
+    public long getDeliveredPackets(){
+        return this.deliveredPackets.get();
+    }
+
+    /**
+     * @return Datagrams sent to an address nobody is bound on
+     */
+    public long getDroppedPackets(){
+        return this.droppedPackets.get();
+    }
+
+    boolean deliver(InetSocketAddress from, InetSocketAddress target, byte[] data){
+        LoopbackTransport endpoint = this.endpoints.get(target);
+        if(endpoint == null){
+            endpoint = this.endpoints.get(new InetSocketAddress(target.getPort()));//Bound on the wildcard address
+        }
+        if(endpoint != null && endpoint.receive(from, data)){
+            this.deliveredPackets.incrementAndGet();
+            return true;
+        }
+        this.droppedPackets.incrementAndGet();
+        return false;
+    }
+
+    void unregister(LoopbackTransport endpoint){
+        this.endpoints.remove(endpoint.getLocalSocketAddress(), endpoint);
+    }
+
+    private LoopbackTransport register(InetSocketAddress bindAddress, ChildNetworkManager networkManager, FlushPolicy flushPolicy) throws SocketException {
+        InetAddress address = bindAddress.getAddress() == null ? InetAddress.getLoopbackAddress() : bindAddress.getAddress();
+        if(bindAddress.getPort() != 0){
+            return this.register(new InetSocketAddress(address, bindAddress.getPort()), networkManager, flushPolicy, true);
+        }
+        while(true){
+            int port = this.nextPort.getAndIncrement();
+            if(port > 65535){
+                this.nextPort.compareAndSet(port + 1, LoopbackNetwork.FIRST_EPHEMERAL_PORT);
+                continue;
+            }
+            LoopbackTransport endpoint = this.register(new InetSocketAddress(address, port), networkManager, flushPolicy, false);
+            if(endpoint != null){
+                return endpoint;
+            }
+        }
+    }
+
+    private LoopbackTransport register(InetSocketAddress address, ChildNetworkManager networkManager, FlushPolicy flushPolicy, boolean fixed) throws SocketException {
+        LoopbackTransport endpoint = new LoopbackTransport(this, address, networkManager);
+        endpoint.setFlushPolicy(flushPolicy);
+        if(this.endpoints.putIfAbsent(address, endpoint) != null){
+            if(fixed){
+                throw new SocketException("Address already in use: " + address);
+            }
+            return null;
+        }
+        return endpoint;
+    }
+}
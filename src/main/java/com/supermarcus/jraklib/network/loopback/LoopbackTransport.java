@@ -0,0 +1,149 @@
+package com.supermarcus.jraklib.network.loopback;
+
+import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.network.*;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Endpoint of a loopback network
+ *
+ * - Flushing hands every queued datagram straight to the receive queue of the target endpoint
+ * - The datagram bytes are not copied, a written packet must not be changed afterwards
+ */
+public class LoopbackTransport implements Transport {
+    private LoopbackNetwork network;
+
+    private InetSocketAddress address;
+
+    private ChildNetworkManager manager;
+
+    volatile private boolean alive = true;
+
+    volatile private FlushPolicy flushPolicy = FlushPolicy.PER_TICK;
+
+    volatile private Runnable receiveListener = null;
+
+    private SendQueue sendQueue = new SendQueue(SendQueue.RING_CAPACITY);
+
+    private ConcurrentLinkedQueue<ReceivedPacket> receiveBuffer = new ConcurrentLinkedQueue<>();
+
+    private Consumer<QueuePacket> sender = packet -> {
+        DatagramPacket datagram = packet.getPacket();
+        byte[] data = datagram.getData();
+        if(datagram.getOffset() != 0 || datagram.getLength() != data.length){
+            data = Arrays.copyOfRange(data, datagram.getOffset(), datagram.getOffset() + datagram.getLength());
+        }
+        if(this.manager != null){
+            this.manager.onSocketSend(data.length);
+        }
+        this.network.deliver(this.address, (InetSocketAddress) datagram.getSocketAddress(), data);
+    };
+
+    LoopbackTransport(LoopbackNetwork network, InetSocketAddress address, ChildNetworkManager networkManager){
+        this.network = network;
+        this.address = address;
+        this.manager = networkManager;
+    }
+
+    public void writePacket(QueuePacket packet){
+        if(!this.alive){
+            return;
+        }
+        this.sendQueue.offer(packet, this::flush);
+        if(this.flushPolicy == FlushPolicy.IMMEDIATE){
+            this.flush();
+        }
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target, SendPriority priority){
+        try{
+            byte[] data = packet.toBinary();
+            DatagramPacket dPacket = new DatagramPacket(data, data.length, target);
+            this.writePacket(new QueuePacket(dPacket, priority));
+        }catch (Exception ignore){}
+    }
+
+    public void writePacket(BinaryConvertible packet, SocketAddress target){
+        this.writePacket(packet, target, SendPriority.NORMAL);
+    }
+
+    /**
+     * To send raw bytes
+     *
+     * @param data Datagram bytes, not copied
+     * @param target Target address
+     */
+    public void writePacket(byte[] data, SocketAddress target){
+        this.writePacket(new QueuePacket(new DatagramPacket(data, data.length, target), SendPriority.NORMAL));
+    }
+
+    public ReceivedPacket readPacket(){
+        return this.receiveBuffer.poll();
+    }
+
+    public void setReceiveListener(Runnable listener){
+        this.receiveListener = listener;
+    }
+
+    public void flush(){
+        this.sendQueue.drain(this.sender);
+    }
+
+    public FlushPolicy getFlushPolicy(){
+        return this.flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        this.flushPolicy = flushPolicy;
+    }
+
+    public InetSocketAddress getLocalSocketAddress(){
+        return this.address;
+    }
+
+    public int getLocalPort(){
+        return this.address.getPort();
+    }
+
+    public boolean isAlive(){
+        return this.alive;
+    }
+
+    public void close(){
+        this.alive = false;
+        this.network.unregister(this);
+        this.receiveBuffer.clear();
+    }
+
+    public LoopbackNetwork getNetwork(){
+        return this.network;
+    }
+
+    public int getReceiveQueueSize(){
+        return this.receiveBuffer.size();
+    }
+
+    boolean receive(InetSocketAddress from, byte[] data){
+        if(!this.alive || data.length == 0){
+            return false;
+        }
+        if(this.manager != null){
+            if(this.manager.isAddressBlocked(from.getAddress())){
+                return false;
+            }
+            this.manager.onSocketRead(data.length, from);
+        }
+        this.receiveBuffer.add(new ReceivedPacket(data, from));
+        Runnable listener = this.receiveListener;
+        if(listener != null){
+            listener.run();
+        }
+        return true;
+    }
+}
@@ -82,7 +82,7 @@ public class BinaryUtils {
     }
 
     public int getLTriad(){
-        return (this.getBuffer().get() & 0xFF) | ((this.getBuffer().get() & 0xFF) << 8) | ((this.getBuffer().get() & 0x0F) << 16);
+        return (this.getBuffer().get() & 0xFF) | ((this.getBuffer().get() & 0xFF) << 8) | ((this.getBuffer().get() & 0xFF) << 16);
     }
 
     public InetSocketAddress getAddress(){
@@ -1,6 +1,7 @@
 package com.supermarcus.jraklib.protocol;
 
 import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.lang.PooledBuffer;
 import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
 
 import java.nio.ByteBuffer;
@@ -8,15 +9,26 @@ import java.nio.ByteBuffer;
 abstract public class Packet implements BinaryConvertible {
     public static final int MAX_SIZE = 1024 * 1024 * 8;
 
-    private ByteBuffer buffer = ByteBuffer.allocate(Packet.MAX_SIZE);
+    /**
+     * Encode buffer size of packets which do not know their encoded size, the largest UDP payload
+     */
+    public static final int ENCODE_SIZE = 65507;
 
-    private BinaryUtils utils = new BinaryUtils(this.buffer);
+    private ByteBuffer buffer = null;
+
+    private BinaryUtils utils = null;
+
+    private PooledBuffer bufferOwner = null;
 
     private PacketInfo identifier = null;
 
+    /**
+     * The encode buffer is allocated on first use with the encode size, decoded packets never allocate it
+     *
+     * @param identifier Packet identifier
+     */
     public Packet(PacketInfo identifier){
         this.identifier = identifier;
-        this.getBuffer().put(this.getNetworkID());
     }
 
     abstract public void encode();
@@ -32,17 +44,54 @@ abstract public class Packet implements BinaryConvertible {
     }
 
     protected ByteBuffer getBuffer(){
-        return buffer;
+        if(this.buffer == null){
+            this.buffer = ByteBuffer.allocate(this.getEncodeSize());
+            this.buffer.put(this.getNetworkID());
+        }
+        return this.buffer;
+    }
+
+    /**
+     * @return Size the encode buffer is allocated with, the packet id included
+     */
+    protected int getEncodeSize(){
+        return Packet.ENCODE_SIZE;
+    }
+
+    /**
+     * Drop the encode buffer, the next write allocates one of the current encode size
+     */
+    protected void resetBuffer(){
+        this.buffer = null;
+        this.utils = null;
     }
 
     public void initBuffer(ByteBuffer buffer){
+        this.initBuffer(buffer, null);
+    }
+
+    /**
+     * Decode from a buffer
+     *
+     * @param buffer Buffer positioned at the packet id
+     * @param owner Pooled page the buffer belongs to, decoded payloads may keep references to it
+     */
+    public void initBuffer(ByteBuffer buffer, PooledBuffer owner){
         this.buffer = buffer;
         this.utils = new BinaryUtils(buffer);
+        this.bufferOwner = owner;
         if(PacketInfo.getById(buffer.get()) != this.getPacketIdentifier()){
             throw new IllegalArgumentException();
         }
     }
 
+    /**
+     * @return Pooled page the decode buffer belongs to, or null
+     */
+    public PooledBuffer getBufferOwner(){
+        return this.bufferOwner;
+    }
+
     public byte[] toBinary(){
         int length = getBuffer().position();
         byte[] raw = new byte[length];
@@ -51,6 +100,9 @@ abstract public class Packet implements BinaryConvertible {
     }
 
     public BinaryUtils getUtils() {
-        return utils;
+        if(this.utils == null){
+            this.utils = new BinaryUtils(this.getBuffer());
+        }
+        return this.utils;
     }
 }
@@ -1,11 +1,15 @@
 package com.supermarcus.jraklib.protocol.raklib;
 
 import com.supermarcus.jraklib.lang.BinaryConvertible;
+import com.supermarcus.jraklib.lang.PooledBuffer;
 import com.supermarcus.jraklib.protocol.BinaryUtils;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
+    private static final AtomicIntegerFieldUpdater<EncapsulatedPacket> REFERENCES = AtomicIntegerFieldUpdater.newUpdater(EncapsulatedPacket.class, "references");
 
     /**
      * RakNet reliability constants
@@ -33,6 +37,12 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
 
     private byte[] buffer = new byte[0];
 
+    private ByteBuffer payload = null;
+
+    private PooledBuffer owner = null;
+
+    volatile private int references = 1;
+
     private boolean needACK = false;
 
     private Integer identifierACK = null;
@@ -53,8 +63,7 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
         this.splitIndex = packet.splitIndex;
         this.needACK = packet.needACK;
 
-        this.buffer = new byte[packet.buffer.length];
-        System.arraycopy(packet.buffer, 0, this.buffer, 0, packet.buffer.length);
+        this.buffer = packet.getBuffer().clone();
 
         this.identifierACK = (packet.identifierACK == null ? null : (Integer)((int) packet.identifierACK));
         this.messageIndex = (packet.messageIndex == null ? null : (Integer)((int) packet.messageIndex));
@@ -67,6 +76,19 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
     }
 
     public EncapsulatedPacket(ByteBuffer buffer, boolean internal){
+        this(buffer, internal, null);
+    }
+
+    /**
+     * Decode a packet, with an owner the payload is a slice of the owner page instead of a copy
+     *
+     * The packet holds a reference to the page until it is released
+     *
+     * @param buffer Buffer positioned at the packet
+     * @param internal Whether the packet uses the internal format
+     * @param owner Page the buffer belongs to, or null to copy the payload
+     */
+    public EncapsulatedPacket(ByteBuffer buffer, boolean internal, PooledBuffer owner){
         BinaryUtils utils = new BinaryUtils(buffer);
 
         byte flags = buffer.get();
@@ -78,7 +100,7 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
             length = buffer.getInt();
             this.setIdentifierACK(buffer.getInt());
         }else {
-            length = (int) Math.ceil(buffer.getShort() / 8);
+            length = (buffer.getShort() & 0xffff) >> 3;
             this.setIdentifierACK(null);
         }
 
@@ -87,7 +109,7 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
                 this.setMessageIndex(utils.getLTriad());
             }
 
-            if((this.getReliability() <= EncapsulatedPacket.RELIABLE_SEQUENCED) && (this.getReliability() != EncapsulatedPacket.RELIABLE)){
+            if(EncapsulatedPacket.hasOrderIndex(this.getReliability())){
                 this.setOrderIndex(utils.getLTriad());
                 this.setOrderChannel((int) buffer.get());
             }
@@ -99,7 +121,33 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
             this.setSplitIndex(buffer.getInt());
         }
 
-        this.setBuffer(utils.getBytes(length));
+        length = Math.max(0, Math.min(length, buffer.remaining()));
+        if(owner != null){
+            ByteBuffer payload = buffer.duplicate();
+            ((Buffer) payload).limit(buffer.position() + length);
+            this.payload = payload.slice();
+            this.owner = owner.retain();
+            this.buffer = null;
+            ((Buffer) buffer).position(buffer.position() + length);
+        }else{
+            this.setBuffer(utils.getBytes(length));
+        }
+    }
+
+    /**
+     * @param reliability Reliability of a frame
+     * @return Whether the frame carries an order index and channel, ordered and sequenced frames do
+     */
+    public static boolean hasOrderIndex(int reliability){
+        switch(reliability){
+            case EncapsulatedPacket.UNRELIABLE_SEQUENCED:
+            case EncapsulatedPacket.RELIABLE_ORDERED:
+            case EncapsulatedPacket.RELIABLE_SEQUENCED:
+            case EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT:
+                return true;
+            default:
+                return false;
+        }
     }
 
     public void writeToBuffer(ByteBuffer buffer){
@@ -112,10 +160,10 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
         buffer.put((byte)((this.getReliability() << 5) | (this.hasSplit() ? (0b00010000) : (0))));
 
         if(internal){
-            buffer.putInt(this.getBuffer().length);
+            buffer.putInt(this.getLength());
             buffer.putInt(this.getIdentifierACK());
         }else {
-            buffer.putShort((short) (this.getBuffer().length << 3));
+            buffer.putShort((short) (this.getLength() << 3));
         }
 
         if(this.getReliability() > EncapsulatedPacket.UNRELIABLE){
@@ -123,7 +171,7 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
                 utils.putLTriad(this.getMessageIndex());
             }
 
-            if((this.getReliability() <= EncapsulatedPacket.RELIABLE_SEQUENCED) && (this.getReliability() != EncapsulatedPacket.RELIABLE)){
+            if(EncapsulatedPacket.hasOrderIndex(this.getReliability())){
                 utils.putLTriad(this.getOrderIndex());
                 buffer.put((byte) (int) this.getOrderChannel());
             }
@@ -135,7 +183,11 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
             buffer.putInt(this.getSplitIndex());
         }
 
-        buffer.put(this.getBuffer());
+        if(this.buffer == null){
+            buffer.put(this.getPayload());
+        }else{
+            buffer.put(this.buffer);
+        }
     }
 
     public byte[] toBinary(){
@@ -145,12 +197,20 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
     }
 
     public int getTotalLength(){
-        return (3 + this.getBuffer().length + (this.getMessageIndex() == null ? 0 : 3) + (this.getOrderIndex() == null ? 0 : 4) + (this.hasSplit() ? 10 : 0));
+        return (3 + this.getLength() + (this.getMessageIndex() == null ? 0 : 3) + (this.getOrderIndex() == null ? 0 : 4) + (this.hasSplit() ? 10 : 0));
     }
 
+    /**
+     * Clone the packet, a pooled clone holds its own reference to the page
+     */
     public EncapsulatedPacket clone(){
         try {
-            return (EncapsulatedPacket) super.clone();
+            EncapsulatedPacket packet = (EncapsulatedPacket) super.clone();
+            packet.references = 1;
+            if(packet.owner != null){
+                packet.owner.retain();
+            }
+            return packet;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
@@ -220,14 +280,118 @@ public class EncapsulatedPacket implements Cloneable, BinaryConvertible {
         this.splitIndex = splitIndex;
     }
 
+    /**
+     * Get the payload as an array, a pooled payload is copied on the first call
+     *
+     * @return Payload bytes
+     */
     public byte[] getBuffer() {
-        return buffer;
+        if(this.buffer == null){
+            ByteBuffer payload = this.payload;
+            if(payload == null){
+                throw new IllegalStateException("payload has been released");
+            }
+            byte[] buffer = new byte[payload.remaining()];
+            payload.duplicate().get(buffer);
+            this.buffer = buffer;
+        }
+        return this.buffer;
     }
 
     public void setBuffer(byte[] buffer) {
+        this.dropPayload();
         this.buffer = buffer;
     }
 
+    /**
+     * Use a buffer as payload without copying it, the packet does not hold a page then
+     *
+     * @param payload Buffer holding the payload from its position to its limit
+     */
+    public void setPayload(ByteBuffer payload){
+        this.dropPayload();
+        this.buffer = null;
+        this.payload = payload.slice();
+    }
+
+    /**
+     * Get the payload without copying it, a pooled payload is only valid until the packet is released
+     *
+     * @return Read-only buffer positioned at the first payload byte
+     */
+    public ByteBuffer getPayload(){
+        if(this.buffer != null){
+            return ByteBuffer.wrap(this.buffer).asReadOnlyBuffer();
+        }
+        ByteBuffer payload = this.payload;
+        if(payload == null){
+            throw new IllegalStateException("payload has been released");
+        }
+        return payload.asReadOnlyBuffer();
+    }
+
+    public int getLength(){
+        if(this.buffer != null){
+            return this.buffer.length;
+        }
+        ByteBuffer payload = this.payload;
+        return payload == null ? 0 : payload.remaining();
+    }
+
+    /**
+     * @return First byte of the payload, the id of the wrapped packet
+     */
+    public byte getPacketId(){
+        if(this.buffer != null){
+            return this.buffer[0];
+        }
+        return this.payload.get(0);
+    }
+
+    public boolean isPooled(){
+        return this.owner != null;
+    }
+
+    public EncapsulatedPacket retain(){
+        int count;
+        do{
+            count = this.references;
+            if(count <= 0){
+                throw new IllegalStateException("retain of a released packet");
+            }
+        }while(!EncapsulatedPacket.REFERENCES.compareAndSet(this, count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drop a reference, the page of a pooled payload is released with the last one
+     *
+     * @return True if this was the last reference
+     */
+    public boolean release(){
+        int count;
+        do{
+            count = this.references;
+            if(count <= 0){
+                throw new IllegalStateException("packet released too often");
+            }
+        }while(!EncapsulatedPacket.REFERENCES.compareAndSet(this, count, count - 1));
+        if(count == 1){
+            this.dropPayload();
+            return true;
+        }
+        return false;
+    }
+
+    private void dropPayload(){
+        PooledBuffer owner = this.owner;
+        this.owner = null;
+        this.payload = null;
+        if(owner != null){
+            owner.release();
+        }
+    }
+
     public void setBuffer(BinaryConvertible packet){
         this.setBuffer(packet.toBinary());
     }
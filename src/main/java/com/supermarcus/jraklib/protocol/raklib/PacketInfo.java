@@ -1,5 +1,6 @@
 package com.supermarcus.jraklib.protocol.raklib;
 
+import com.supermarcus.jraklib.lang.PooledBuffer;
 import com.supermarcus.jraklib.protocol.Packet;
 
 import java.nio.ByteBuffer;
@@ -114,11 +115,32 @@ public enum PacketInfo {
     }
 
     public Packet wrap(byte[] buffer){
+        return this.wrap(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Wrap a buffer without copying it, the packet reads from the current position
+     *
+     * @param buffer Buffer holding the packet
+     * @return Packet instance or null if the buffer does not hold this packet
+     */
+    public Packet wrap(ByteBuffer buffer){
+        return this.wrap(buffer, null);
+    }
+
+    /**
+     * Wrap a pooled buffer, payloads of data packets become retained slices of the page
+     *
+     * @param buffer Buffer holding the packet
+     * @param owner Page the buffer belongs to, or null to copy payloads
+     * @return Packet instance or null if the buffer does not hold this packet
+     */
+    public Packet wrap(ByteBuffer buffer, PooledBuffer owner){
         Packet instance = null;
-        if(buffer[0] == this.getNetworkId()){
+        if(buffer.get(buffer.position()) == this.getNetworkId()){
             try {
                 instance = this.packet.newInstance();
-                instance.initBuffer(ByteBuffer.wrap(buffer));
+                instance.initBuffer(buffer, owner);
             } catch (Exception e) {
                 instance = null;
             }
@@ -1,108 +1,163 @@
 package com.supermarcus.jraklib.protocol.raklib.acknowledge;
 
+import com.supermarcus.jraklib.lang.Triad;
 import com.supermarcus.jraklib.protocol.BinaryUtils;
 import com.supermarcus.jraklib.protocol.Packet;
 import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
+/**
+ * ACK or NACK, sequence numbers are kept as inclusive ranges as they are on the wire
+ *
+ * - Adding the next sequence number extends the last range, adding ranges in order allocates nothing
+ * - Ranges are written in the order they were added, a range never wraps around the 24 bit sequence space
+ */
 public abstract class AcknowledgePacket extends Packet {
-    private ArrayList<Integer> packets = new ArrayList<>();
+    /**
+     * Longest range taken from a received packet
+     */
+    public static final int MAX_RANGE = 512;
+
+    /**
+     * Sequence numbers taken from a received packet at most
+     */
+    public static final int MAX_PACKETS = 4096;
+
+    private int[] ranges = new int[16];
+
+    private int rangeCount = 0;
 
     public AcknowledgePacket(PacketInfo identifier) {
         super(identifier);
     }
 
     public void encode(){
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
-        BinaryUtils utils = new BinaryUtils(buffer);
-        int records = 0;
-
-        if(this.getPacketCount() > 0){
-            Integer[] packets = this.getPackets();
-
-            int pointer = 0;
-            int start = packets[0];
-            int last = packets[0];
-
-            while(pointer + 1 < this.getPacketCount()){
-                int current = packets[pointer++];
-                int diff = current - last;
-                if(diff == 1){
-                    last = current;
-                } else if(diff > 1){
-                    if(start == last){
-                        utils.putBool(true);
-                        utils.putLTriad(start);
-                        start = last = current;
-                    } else {
-                        utils.putBool(false);
-                        utils.putLTriad(start);
-                        utils.putLTriad(last);
-                        start = last = current;
-                    }
-                    records++;
-                }
-            }
-
-            if(start == last){
+        ByteBuffer buffer = this.getBuffer();
+        BinaryUtils utils = this.getUtils();
+        int countPosition = buffer.position();
+        buffer.putShort((short) 0);
+        for(int i = 0; i < this.rangeCount; ++i){
+            int start = this.ranges[i * 2];
+            int end = this.ranges[i * 2 + 1];
+            if(start == end){
                 utils.putBool(true);
                 utils.putLTriad(start);
-            } else {
+            }else{
                 utils.putBool(false);
                 utils.putLTriad(start);
-                utils.putLTriad(last);
+                utils.putLTriad(end);
             }
-            records++;
         }
-        this.getBuffer().putShort((short) records);
-        this.getBuffer().put(buffer.array(), 0, buffer.position());
+        buffer.putShort(countPosition, (short) this.rangeCount);
+    }
+
+    protected int getEncodeSize(){
+        return 3 + (this.rangeCount * 7);
     }
 
     public void decode(){
         this.clearPacketBuffer();
-        int count = this.getBuffer().getShort();
+        int count = this.getBuffer().getShort() & 0xFFFF;
         int cnt = 0;
 
-        for(int i = 0; ((i < count) && (this.getBuffer().remaining() > 0) && (cnt < 4096)); i++){
+        for(int i = 0; ((i < count) && (this.getBuffer().remaining() > 0) && (cnt < AcknowledgePacket.MAX_PACKETS)); i++){
             if(this.getUtils().getBool()){
-                this.addPacket(this.getUtils().getLTriad());
+                this.addRange(this.getUtils().getLTriad(), 0);
+                cnt++;
             } else {
                 int start = this.getUtils().getLTriad();
                 int end = this.getUtils().getLTriad();
-
-                if((end - start) > 512){
-                    end = start + 512;
-                }
-                for(int p = start; p <= end; p++){
-                    cnt++;
-                    this.addPacket(p);
+                if(end < start){
+                    continue;
                 }
+                int length = Math.min(end - start, AcknowledgePacket.MAX_RANGE);
+                this.addRange(start, length);
+                cnt += length + 1;
             }
         }
     }
 
     public void addPackets(Collection<Integer> packets){
-        this.packets.addAll(packets);
+        ArrayList<Integer> sorted = new ArrayList<>(packets);
+        Collections.sort(sorted);
+        for(Integer packet : sorted){
+            this.addPacket(packet);
+        }
     }
 
     public void addPacket(int packetIdentifier){
-        this.packets.add(packetIdentifier);
+        this.addRange(packetIdentifier, 0);
+    }
+
+    /**
+     * Add a range of sequence numbers, merged into the last range if it follows it
+     *
+     * @param start First sequence number
+     * @param length Sequence numbers after the first one, the range must not pass 0xFFFFFF
+     */
+    public void addRange(int start, int length){
+        start &= Triad.MASK;
+        int end = start + length;
+        if(this.rangeCount > 0){
+            int last = (this.rangeCount - 1) * 2;
+            if((start >= this.ranges[last]) && (start <= (this.ranges[last + 1] + 1))){
+                this.ranges[last + 1] = Math.max(this.ranges[last + 1], end);
+                return;
+            }
+        }
+        if((this.rangeCount * 2) == this.ranges.length){
+            this.ranges = Arrays.copyOf(this.ranges, this.ranges.length * 2);
+        }
+        this.ranges[this.rangeCount * 2] = start;
+        this.ranges[this.rangeCount * 2 + 1] = end;
+        ++this.rangeCount;
+    }
+
+    public int getRangeCount(){
+        return this.rangeCount;
+    }
+
+    /**
+     * @param index Range index
+     * @return First sequence number of the range
+     */
+    public int getRangeStart(int index){
+        return this.ranges[index * 2];
+    }
+
+    /**
+     * @param index Range index
+     * @return Last sequence number of the range, inclusive
+     */
+    public int getRangeEnd(int index){
+        return this.ranges[index * 2 + 1];
     }
 
     public Integer[] getPackets(){
-        Collections.sort(this.packets);
-        return this.packets.toArray(new Integer[this.packets.size()]);
+        ArrayList<Integer> packets = new ArrayList<>(this.getPacketCount());
+        for(int i = 0; i < this.rangeCount; ++i){
+            for(int seq = this.getRangeStart(i); seq <= this.getRangeEnd(i); ++seq){
+                packets.add(seq);
+            }
+        }
+        Collections.sort(packets);
+        return packets.toArray(new Integer[packets.size()]);
     }
 
     public int getPacketCount(){
-        return this.packets.size();
+        int count = 0;
+        for(int i = 0; i < this.rangeCount; ++i){
+            count += this.getRangeEnd(i) - this.getRangeStart(i) + 1;
+        }
+        return count;
     }
 
     public void clearPacketBuffer(){
-        this.packets.clear();
+        this.rangeCount = 0;
     }
 }
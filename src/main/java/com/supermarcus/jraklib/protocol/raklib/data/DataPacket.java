@@ -5,6 +5,7 @@ import com.supermarcus.jraklib.protocol.Packet;
 import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
 import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
 
+import java.nio.Buffer;
 import java.util.ArrayList;
 
 abstract public class DataPacket extends Packet {
@@ -17,6 +18,10 @@ abstract public class DataPacket extends Packet {
     }
 
     public void encode(){
+        if(this.getBuffer().capacity() < this.getLength()){
+            this.resetBuffer();//Packets were added since the last encode
+        }
+        ((Buffer) this.getBuffer()).position(1);//A retransmitted packet is encoded again
         this.getUtils().putLTriad(this.getSeqNumber());
         for(BinaryConvertible packet : this.getPackets()){
             if(packet instanceof EncapsulatedPacket){
@@ -30,15 +35,20 @@ abstract public class DataPacket extends Packet {
     public void decode(){
         this.setSeqNumber(this.getUtils().getLTriad());
         while(this.getBuffer().hasRemaining()){
-            EncapsulatedPacket packet = new EncapsulatedPacket(this.getBuffer());
-            if(packet.getBuffer().length > 0){
+            EncapsulatedPacket packet = new EncapsulatedPacket(this.getBuffer(), false, this.getBufferOwner());
+            if(packet.getLength() > 0){
                 this.addPacket(packet);
             }else{
+                packet.release();
                 break;
             }
         }
     }
 
+    protected int getEncodeSize(){
+        return this.getLength();
+    }
+
     public int getLength(){
         int length = 4;
         for(BinaryConvertible packet : this.getPackets()){
@@ -59,6 +69,18 @@ abstract public class DataPacket extends Packet {
         this.packets.clear();
     }
 
+    /**
+     * Release the decoded packets that have not been handed on and clear the list
+     */
+    public void releasePackets(){
+        for(BinaryConvertible packet : this.packets){
+            if(packet instanceof EncapsulatedPacket){
+                ((EncapsulatedPacket) packet).release();
+            }
+        }
+        this.packets.clear();
+    }
+
     public int countPackets(){
         return this.packets.size();
     }
@@ -0,0 +1,27 @@
+package com.supermarcus.jraklib.lang;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads running PacketHandler calls off the main thread
+ *
+ * - This version is loaded from META-INF/versions/21 and starts a virtual thread per call
+ * - A handler blocking on I/O only parks its virtual thread, carrier threads stay free for the other sessions
+ */
+public class HandlerThreads {
+    /**
+     * @return Whether handler calls run on virtual threads
+     */
+    public static boolean isVirtual(){
+        return true;
+    }
+
+    /**
+     * @param name Name prefix of the threads
+     * @return A new executor
+     */
+    public static ExecutorService newExecutor(String name){
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + " #", 0).factory());
+    }
+}
@@ -0,0 +1,35 @@
+package com.supermarcus.test;
+
+import com.supermarcus.jraklib.SessionManager;
+import com.supermarcus.jraklib.SessionManager.EventQueue;
+import com.supermarcus.jraklib.lang.RawPacket;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+
+public class QueueCapacityTest {
+    private SessionManager manager = new SessionManager(true);//Custom threads, nothing drains the queues
+
+    @After
+    public void shutdown(){
+        this.manager.shutdown();
+    }
+
+    @Test
+    public void queueIsNotShrunkBelowTheEventsWaiting(){
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 19132);
+        for(int i = 0; i < 10; ++i){
+            this.manager.queueRaw(new RawPacket(new byte[]{(byte) i}, address, null));
+        }
+        this.manager.setQueueCapacity(EventQueue.RAW_PACKETS, 2);
+        assertEquals(16, this.manager.getQueueCapacity(EventQueue.RAW_PACKETS));
+        assertEquals(10, this.manager.getQueueSize(EventQueue.RAW_PACKETS));
+        assertEquals(0, this.manager.getDroppedEvents(EventQueue.RAW_PACKETS));
+
+        this.manager.setQueueCapacity(EventQueue.MESSAGES, 2);
+        assertEquals(2, this.manager.getQueueCapacity(EventQueue.MESSAGES));
+    }
+}
@@ -0,0 +1,89 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.BoundedQueue;
+import com.supermarcus.jraklib.lang.OverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BoundedQueueTest {
+    /**
+     * Negative elements stand for the ones which must not be discarded
+     */
+    private static BoundedQueue<Integer> newQueue(OverflowPolicy policy, ArrayList<Integer> discarded){
+        return new BoundedQueue<>("test", 2, policy, discarded::add, e -> e >= 0);
+    }
+
+    private static ArrayList<Integer> drain(BoundedQueue<Integer> queue){
+        ArrayList<Integer> drained = new ArrayList<>();
+        queue.drain(drained::add, Integer.MAX_VALUE);
+        return drained;
+    }
+
+    @Test
+    public void dropNewestDiscardsOnlyDiscardableElements(){
+        ArrayList<Integer> discarded = new ArrayList<>();
+        BoundedQueue<Integer> queue = BoundedQueueTest.newQueue(OverflowPolicy.DROP_NEWEST, discarded);
+        assertTrue(queue.offer(1, null, false));
+        assertTrue(queue.offer(2, null, false));
+        assertFalse(queue.offer(3, null, false));
+        assertTrue(queue.offer(-4, null, false));
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.takeOverflows());
+        assertEquals(0, queue.takeOverflows());
+        assertEquals(1, queue.getDropped());
+        assertEquals(Collections.singletonList(3), discarded);
+        assertEquals(Arrays.asList(-4, 1, 2), BoundedQueueTest.drain(queue));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void dropOldestKeepsElementsWhichMustNotBeDiscarded(){
+        ArrayList<Integer> discarded = new ArrayList<>();
+        BoundedQueue<Integer> queue = BoundedQueueTest.newQueue(OverflowPolicy.DROP_OLDEST, discarded);
+        assertTrue(queue.offer(-1, null, false));
+        assertTrue(queue.offer(2, null, false));
+        assertTrue(queue.offer(3, null, false));
+        assertTrue(queue.offer(4, null, false));
+        assertEquals(Collections.singletonList(2), discarded);
+        assertEquals(Arrays.asList(-1, 3, 4), BoundedQueueTest.drain(queue));
+    }
+
+    @Test
+    public void producerWaitsForRoomInsteadOfDiscarding() throws Exception{
+        ArrayList<Integer> discarded = new ArrayList<>();
+        BoundedQueue<Integer> queue = BoundedQueueTest.newQueue(OverflowPolicy.DROP_NEWEST, discarded);
+        queue.offer(1, null, false);
+        queue.offer(2, null, false);
+        CountDownLatch queued = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            queue.offer(-3, null, true);
+            queued.countDown();
+        });
+        producer.start();
+        assertFalse(queued.await(20, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(2, -3), BoundedQueueTest.drain(queue));
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void closedQueueKeepsElementsWhichMustNotBeDiscarded(){
+        ArrayList<Integer> discarded = new ArrayList<>();
+        BoundedQueue<Integer> queue = BoundedQueueTest.newQueue(OverflowPolicy.BLOCK, discarded);
+        queue.offer(1, null, false);
+        queue.offer(2, null, false);
+        queue.close();
+        assertTrue(queue.offer(-3, null, true));
+        assertFalse(queue.offer(4, null, true));
+        assertEquals(Collections.singletonList(4), discarded);
+        assertEquals(3, queue.size());
+    }
+}
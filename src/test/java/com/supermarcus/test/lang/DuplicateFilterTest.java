@@ -0,0 +1,91 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.DuplicateFilter;
+import com.supermarcus.jraklib.lang.Triad;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTest {
+    @Test
+    public void sizeIsRoundedUpToPowerOfTwo(){
+        assertEquals(64, new DuplicateFilter(1).getSize());
+        assertEquals(128, new DuplicateFilter(100).getSize());
+        assertEquals(2048, new DuplicateFilter(2048).getSize());
+        assertEquals(Triad.MAX_WINDOW, new DuplicateFilter(Integer.MAX_VALUE).getSize());
+    }
+
+    @Test
+    public void everyIndexIsTakenOnce(){
+        DuplicateFilter filter = new DuplicateFilter(64);
+        assertTrue(filter.accept(0));
+        assertTrue(filter.accept(5));
+        assertTrue(filter.accept(3));
+        assertFalse(filter.accept(5));
+        assertFalse(filter.accept(0));
+        assertTrue(filter.accept(63));
+        assertEquals(0, filter.getBase());
+    }
+
+    @Test
+    public void indexAheadSlidesTheBitmap(){
+        DuplicateFilter filter = new DuplicateFilter(64);
+        assertTrue(filter.accept(0));
+        assertTrue(filter.accept(40));
+        assertTrue(filter.accept(100));
+        assertEquals(37, filter.getBase());
+        assertFalse(filter.accept(0));
+        assertFalse(filter.accept(36));
+        assertFalse(filter.accept(40));
+        assertTrue(filter.accept(37));
+        assertFalse(filter.accept(100));
+    }
+
+    @Test
+    public void indexMoreThanABitmapAheadIsRefused(){
+        DuplicateFilter filter = new DuplicateFilter(64);
+        assertTrue(filter.isTooFarAhead(128));
+        assertFalse(filter.isTooFarAhead(127));
+        assertFalse(filter.isTooFarAhead(Triad.MASK));
+        assertFalse(filter.accept(128));
+        assertEquals(0, filter.getBase());
+        assertTrue(filter.accept(127));
+        assertEquals(64, filter.getBase());
+        assertTrue(filter.accept(128));
+    }
+
+    @Test
+    public void indexesWrapAround(){
+        DuplicateFilter filter = new DuplicateFilter(64);
+        for(int index = 0; index < (Triad.MASK - 64); index += 64){
+            assertTrue(filter.accept(index));
+        }
+        assertTrue(filter.accept(Triad.MASK - 64));
+        assertTrue(filter.accept(Triad.MASK - 1));
+        assertTrue(filter.accept(Triad.MASK));
+        assertTrue(filter.accept(0));
+        assertTrue(filter.accept(1));
+        assertFalse(filter.accept(Triad.MASK));
+        assertFalse(filter.accept(0));
+        assertTrue(filter.accept(60));
+        assertEquals((60 - 63) & Triad.MASK, filter.getBase());
+        assertFalse(filter.accept(Triad.MASK));
+        assertFalse(filter.accept(Triad.MASK - 3));
+    }
+
+    @Test
+    public void filterAtTheCapStillSlides(){
+        DuplicateFilter filter = new DuplicateFilter(Triad.MAX_WINDOW);
+        assertTrue(filter.isTooFarAhead(Triad.MAX_WINDOW * 2));
+        assertTrue(filter.accept(Triad.MAX_WINDOW));
+        assertEquals(1, filter.getBase());
+        for(int index = Triad.MAX_WINDOW * 2; index <= Triad.MASK; index += Triad.MAX_WINDOW){
+            assertTrue(filter.accept(index));
+            assertFalse(filter.accept(index));
+        }
+        assertEquals((Triad.MAX_WINDOW * 6) + 1, filter.getBase());
+        assertTrue(filter.accept(0));//Past the wraparound
+        assertEquals((Triad.MAX_WINDOW * 7) + 1, filter.getBase());
+        assertFalse(filter.accept(Triad.MAX_WINDOW * 7));
+    }
+}
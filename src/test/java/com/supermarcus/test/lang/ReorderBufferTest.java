@@ -0,0 +1,114 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.ReorderBuffer;
+import com.supermarcus.jraklib.lang.Triad;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ReorderBufferTest {
+    private static ArrayList<Integer> pollAll(ReorderBuffer<Integer> buffer){
+        ArrayList<Integer> polled = new ArrayList<>();
+        Integer element;
+        while((element = buffer.poll()) != null){
+            polled.add(element);
+        }
+        return polled;
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo(){
+        assertEquals(1, new ReorderBuffer<Integer>(1).capacity());
+        assertEquals(8, new ReorderBuffer<Integer>(5).capacity());
+        assertEquals(Triad.MAX_WINDOW, new ReorderBuffer<Integer>(Integer.MAX_VALUE).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSizeIsRefused(){
+        new ReorderBuffer<Integer>(0);
+    }
+
+    @Test
+    public void laterElementsWaitForTheGap(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8);
+        assertTrue(buffer.offer(2, 2));
+        assertTrue(buffer.offer(1, 1));
+        assertNull(buffer.poll());
+        assertEquals(2, buffer.getHeld());
+        assertTrue(buffer.offer(0, 0));
+        assertEquals(Arrays.asList(0, 1, 2), ReorderBufferTest.pollAll(buffer));
+        assertEquals(3, buffer.getNext());
+        assertEquals(0, buffer.getHeld());
+    }
+
+    @Test
+    public void duplicatesAreRefused(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8);
+        assertTrue(buffer.offer(0, 0));
+        assertTrue(buffer.offer(3, 3));
+        assertFalse(buffer.offer(3, 30));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertFalse(buffer.offer(0, 0));
+        assertFalse(buffer.offer(Triad.MASK, -1));
+        assertEquals(1, buffer.getHeld());
+    }
+
+    @Test
+    public void elementsTooFarAheadAreRefused(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8);
+        assertTrue(buffer.offer(7, 7));
+        assertFalse(buffer.offer(8, 8));
+        assertEquals(1, buffer.getHeld());
+        for(int i = 0; i < 7; ++i){
+            buffer.offer(i, i);
+        }
+        assertEquals(8, ReorderBufferTest.pollAll(buffer).size());
+        assertTrue(buffer.offer(8, 8));
+        assertTrue(buffer.offer(15, 15));
+        assertFalse(buffer.offer(16, 16));
+    }
+
+    @Test
+    public void indexesWrapAround(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8);
+        for(int i = 0; i < Triad.MASK - 1; ++i){
+            assertTrue(buffer.offer(i, i));
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertTrue(buffer.offer(1, 1));
+        assertTrue(buffer.offer(0, 0));
+        assertTrue(buffer.offer(Triad.MASK, Triad.MASK));
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(Triad.MASK - 1, Triad.MASK - 1));
+        assertEquals(Arrays.asList(Triad.MASK - 1, Triad.MASK, 0, 1), ReorderBufferTest.pollAll(buffer));
+        assertEquals(2, buffer.getNext());
+    }
+
+    @Test
+    public void clearHandsOutHeldElements(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8);
+        buffer.offer(2, 2);
+        buffer.offer(5, 5);
+        ArrayList<Integer> discarded = new ArrayList<>();
+        buffer.clear(discarded::add);
+        assertEquals(Arrays.asList(2, 5), discarded);
+        assertEquals(0, buffer.getHeld());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void ringAtTheCapReachesEverySlot(){
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(Triad.MAX_WINDOW);
+        assertTrue(buffer.isTooFarAhead(Triad.MAX_WINDOW));
+        assertFalse(buffer.offer(Triad.MAX_WINDOW, -1));
+        assertFalse(buffer.isTooFarAhead(Triad.MAX_WINDOW - 1));
+        assertTrue(buffer.offer(Triad.MAX_WINDOW - 1, Triad.MAX_WINDOW - 1));
+        assertTrue(buffer.offer(0, 0));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(Triad.MAX_WINDOW, Triad.MAX_WINDOW));
+        assertEquals(2, buffer.getHeld());
+    }
+}
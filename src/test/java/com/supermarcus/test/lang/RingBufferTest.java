@@ -0,0 +1,133 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.RingBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo(){
+        assertEquals(2, new RingBuffer<Integer>(1).capacity());
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsRefused(){
+        new RingBuffer<Integer>(0);
+    }
+
+    @Test
+    public void offerFailsWhenFullAndPollWhenEmpty(){
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+        for(int i = 0; i < 4; ++i){
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        assertFalse(ring.offer(5));
+    }
+
+    @Test
+    public void smallestRingReportsFull(){
+        RingBuffer<Integer> ring = new RingBuffer<>(1);
+        assertTrue(ring.offer(0));
+        assertTrue(ring.offer(1));
+        assertFalse(ring.offer(2));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertEquals(Integer.valueOf(1), ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void keepsFifoOrderAcrossManyWraps(){
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        int next = 0;
+        int expected = 0;
+        for(int round = 0; round < 1000; ++round){
+            int count = (round % 8) + 1;
+            for(int i = 0; i < count; ++i){
+                assertTrue(ring.offer(next++));
+            }
+            for(int i = 0; i < count; ++i){
+                assertEquals(Integer.valueOf(expected++), ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+            assertEquals(0, ring.size());
+        }
+    }
+
+    @Test
+    public void drainStopsAtLimit(){
+        RingBuffer<Integer> ring = new RingBuffer<>(16);
+        for(int i = 0; i < 10; ++i){
+            ring.offer(i);
+        }
+        ArrayList<Integer> drained = new ArrayList<>();
+        assertEquals(4, ring.drain(drained::add, 4));
+        assertEquals(6, ring.size());
+        assertEquals(6, ring.drain(drained::add, 100));
+        for(int i = 0; i < 10; ++i){
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullIsRefused(){
+        new RingBuffer<Integer>(4).offer(null);
+    }
+
+    @Test
+    public void concurrentProducersAndConsumersLoseNothing() throws InterruptedException {
+        final RingBuffer<Integer> ring = new RingBuffer<>(64);
+        final int producers = 4;
+        final int perProducer = 20000;
+        final ConcurrentLinkedQueue<Integer> taken = new ConcurrentLinkedQueue<>();
+        final AtomicInteger remaining = new AtomicInteger(producers * perProducer);
+        ArrayList<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; ++p){
+            final int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < perProducer; ++i){
+                    while(!ring.offer(base + i)){
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for(int c = 0; c < 2; ++c){
+            threads.add(new Thread(() -> {
+                while(remaining.get() > 0){
+                    Integer element = ring.poll();
+                    if(element != null){
+                        taken.add(element);
+                        remaining.decrementAndGet();
+                    }else{
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads){
+            thread.start();
+        }
+        for(Thread thread : threads){
+            thread.join(30000);
+        }
+        assertEquals(producers * perProducer, taken.size());
+        boolean[] seen = new boolean[producers * perProducer];
+        for(int element : taken){
+            assertFalse("taken twice: " + element, seen[element]);
+            seen[element] = true;
+        }
+    }
+}
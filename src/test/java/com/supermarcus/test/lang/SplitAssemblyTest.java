@@ -0,0 +1,111 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.SplitAssembly;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SplitAssemblyTest {
+    private static final byte[] PAYLOAD = new byte[250];
+
+    static{
+        for(int i = 0; i < SplitAssemblyTest.PAYLOAD.length; ++i){
+            SplitAssemblyTest.PAYLOAD[i] = (byte) i;
+        }
+    }
+
+    /**
+     * Fragment of PAYLOAD cut in fragments of 100 bytes, the last one has 50
+     */
+    private static ByteBuffer fragment(int index){
+        int from = index * 100;
+        return ByteBuffer.wrap(Arrays.copyOfRange(SplitAssemblyTest.PAYLOAD, from, Math.min(from + 100, SplitAssemblyTest.PAYLOAD.length)));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void splitCountMustBePositive(){
+        new SplitAssembly(0, 0L);
+    }
+
+    @Test
+    public void fragmentsArePutTogetherInAnyOrder(){
+        for(int[] order : new int[][]{{0, 1, 2}, {2, 1, 0}, {1, 2, 0}}){
+            SplitAssembly assembly = new SplitAssembly(3, 1234L);
+            for(int i = 0; i < order.length; ++i){
+                assertNull(assembly.getPayload());
+                assertTrue(assembly.add(order[i], SplitAssemblyTest.fragment(order[i])));
+                assertTrue(assembly.isReceived(order[i]));
+                assertEquals(i + 1, assembly.getReceivedCount());
+            }
+            assertTrue(assembly.isComplete());
+            assertArrayEquals(SplitAssemblyTest.PAYLOAD, SplitAssemblyTest.toArray(assembly.getPayload()));
+            assertEquals(300, assembly.getSize());
+            assertEquals(1234L, assembly.getStartTime());
+        }
+    }
+
+    @Test
+    public void lastFragmentIsKeptAsideUntilTheSizeIsKnown(){
+        SplitAssembly assembly = new SplitAssembly(3, 0L);
+        assertTrue(assembly.add(2, SplitAssemblyTest.fragment(2)));
+        assertEquals(50, assembly.getSize());
+        assertTrue(assembly.add(0, SplitAssemblyTest.fragment(0)));
+        assertEquals(300, assembly.getSize());
+    }
+
+    @Test
+    public void singleFragment(){
+        SplitAssembly assembly = new SplitAssembly(1, 0L);
+        assertTrue(assembly.add(0, SplitAssemblyTest.fragment(2)));
+        assertTrue(assembly.isComplete());
+        assertEquals(50, assembly.getPayload().remaining());
+    }
+
+    @Test
+    public void duplicateAndOutOfRangeFragmentsAreRefused(){
+        SplitAssembly assembly = new SplitAssembly(3, 0L);
+        assertTrue(assembly.add(0, SplitAssemblyTest.fragment(0)));
+        assertFalse(assembly.add(0, SplitAssemblyTest.fragment(0)));
+        assertFalse(assembly.add(-1, SplitAssemblyTest.fragment(1)));
+        assertFalse(assembly.add(3, SplitAssemblyTest.fragment(1)));
+        assertFalse(assembly.isReceived(3));
+        assertEquals(1, assembly.getReceivedCount());
+    }
+
+    @Test
+    public void fragmentsOfAnotherSizeAreRefused(){
+        SplitAssembly assembly = new SplitAssembly(3, 0L);
+        assertTrue(assembly.add(0, SplitAssemblyTest.fragment(0)));
+        assertFalse(assembly.add(1, ByteBuffer.allocate(99)));
+        assertFalse(assembly.add(2, ByteBuffer.allocate(101)));
+        assertTrue(assembly.add(2, ByteBuffer.allocate(100)));
+
+        assembly = new SplitAssembly(3, 0L);
+        assertTrue(assembly.add(2, ByteBuffer.allocate(120)));
+        assertFalse(assembly.add(0, ByteBuffer.allocate(100)));
+        assertEquals(1, assembly.getReceivedCount());
+    }
+
+    @Test
+    public void largeSplitCountsUseSeveralBitmapWords(){
+        SplitAssembly assembly = new SplitAssembly(130, 0L);
+        assertTrue(assembly.add(129, ByteBuffer.allocate(1)));
+        assertTrue(assembly.isReceived(129));
+        assertFalse(assembly.isReceived(65));
+        assertFalse(assembly.isReceived(1));
+        for(int i = 0; i < 129; ++i){
+            assertTrue(assembly.add(i, ByteBuffer.allocate(2)));
+        }
+        assertTrue(assembly.isComplete());
+        assertEquals(259, assembly.getPayload().remaining());
+    }
+}
@@ -0,0 +1,34 @@
+package com.supermarcus.test.lang;
+
+import com.supermarcus.jraklib.lang.Triad;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TriadTest {
+    @Test
+    public void distanceWrapsAround(){
+        assertEquals(5, Triad.distance(10, 15));
+        assertEquals(-5, Triad.distance(15, 10));
+        assertEquals(1, Triad.distance(Triad.MASK, 0));
+        assertEquals(-1, Triad.distance(0, Triad.MASK));
+        assertEquals((1 << 23) - 1, Triad.distance(0, (1 << 23) - 1));
+        assertEquals(-(1 << 23), Triad.distance(0, 1 << 23));
+    }
+
+    @Test
+    public void windowSizeIsRoundedAndClamped(){
+        assertEquals(64, Triad.windowSize(1, 64));
+        assertEquals(1, Triad.windowSize(0, 1));
+        assertEquals(128, Triad.windowSize(65, 64));
+        assertEquals(128, Triad.windowSize(128, 64));
+        assertEquals(Triad.MAX_WINDOW, Triad.windowSize(Triad.MAX_WINDOW - 1, 1));
+        assertEquals(Triad.MAX_WINDOW, Triad.windowSize(Integer.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void twoWindowsAheadIsStillAPositiveDistance(){
+        assertTrue(Triad.distance(0, (Triad.MAX_WINDOW * 2) & Triad.MASK) > 0);
+        assertTrue(Triad.distance(Triad.MASK, ((Triad.MAX_WINDOW * 2) - 1) & Triad.MASK) > 0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.network.BufferArena;
+import com.supermarcus.jraklib.network.ProtocolSocket;
+import com.supermarcus.jraklib.network.ReceivedPacket;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BufferArenaTest {
+    @Test
+    public void smallPagesAreRaisedToTheLargestDatagram() throws Exception{
+        BufferArena arena = new BufferArena(2, 1024, false);
+        assertEquals(ProtocolSocket.MAX_DATAGRAM_SIZE, arena.getPageSize());
+        byte[] sent = new byte[100];
+        Arrays.fill(sent, (byte) 7);
+        try(DatagramSocket socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))){
+            socket.setSoTimeout(5000);
+            socket.send(new DatagramPacket(sent, sent.length, socket.getLocalSocketAddress()));
+            ReceivedPacket packet = arena.receive(socket, new DatagramPacket(new byte[0], 0));
+            assertEquals(1, arena.getAvailablePages());//The pooled page was taken, not a new one
+            assertArrayEquals(sent, packet.getRawData());
+            packet.release();
+        }
+    }
+
+    @Test
+    public void pagesAreRecycledOnceReleased(){
+        BufferArena arena = new BufferArena(1, 0, false);
+        InetSocketAddress from = new InetSocketAddress(InetAddress.getLoopbackAddress(), 19132);
+        ReceivedPacket first = arena.copy(ByteBuffer.wrap(new byte[]{1, 2, 3}), from);
+        ReceivedPacket second = arena.copy(ByteBuffer.wrap(new byte[arena.getPageSize()]), from);//Does not fit, the next page is started
+        assertArrayEquals(new byte[]{1, 2, 3}, first.getRawData());
+        assertEquals(0, arena.getAvailablePages());
+        first.release();
+        assertEquals(1, arena.getAvailablePages());
+        second.release();
+        assertEquals(1, arena.getAvailablePages());
+    }
+}
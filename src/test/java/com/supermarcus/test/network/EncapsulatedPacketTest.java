@@ -0,0 +1,70 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class EncapsulatedPacketTest {
+    private static EncapsulatedPacket newPacket(int reliability){
+        EncapsulatedPacket packet = new EncapsulatedPacket();
+        packet.setReliability(reliability);
+        packet.setMessageIndex(0x010203);
+        packet.setOrderIndex(0x123456);
+        packet.setOrderChannel(5);
+        packet.setBuffer(new byte[]{(byte) 0x8f, 1, 2});
+        return packet;
+    }
+
+    @Test
+    public void orderedFrameWithAckReceiptCarriesItsOrderIndex(){
+        EncapsulatedPacket packet = EncapsulatedPacketTest.newPacket(EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT);
+        byte[] binary = packet.toBinary();
+        //Flags, length, message index, order index, order channel, payload
+        assertArrayEquals(new byte[]{(byte) 0xe0, 0, 24, 3, 2, 1, 0x56, 0x34, 0x12, 5, (byte) 0x8f, 1, 2}, binary);
+
+        EncapsulatedPacket decoded = new EncapsulatedPacket(ByteBuffer.wrap(binary));
+        assertEquals(EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT, decoded.getReliability());
+        assertEquals(Integer.valueOf(0x010203), decoded.getMessageIndex());
+        assertEquals(Integer.valueOf(0x123456), decoded.getOrderIndex());
+        assertEquals(Integer.valueOf(5), decoded.getOrderChannel());
+        assertArrayEquals(new byte[]{(byte) 0x8f, 1, 2}, decoded.getBuffer());
+    }
+
+    @Test
+    public void splitOrderedFrameWithAckReceiptRoundTrips(){
+        EncapsulatedPacket packet = EncapsulatedPacketTest.newPacket(EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT);
+        packet.setSplit(true);
+        packet.setSplitCount(3);
+        packet.setSplitID((short) 9);
+        packet.setSplitIndex(1);
+        byte[] binary = packet.toBinary();
+        assertEquals(binary.length, packet.getTotalLength());
+
+        EncapsulatedPacket decoded = new EncapsulatedPacket(ByteBuffer.wrap(binary));
+        assertEquals(Integer.valueOf(0x123456), decoded.getOrderIndex());
+        assertEquals(Integer.valueOf(5), decoded.getOrderChannel());
+        assertEquals(3, decoded.getSplitCount());
+        assertEquals(9, decoded.getSplitID());
+        assertEquals(1, decoded.getSplitIndex());
+        assertArrayEquals(new byte[]{(byte) 0x8f, 1, 2}, decoded.getBuffer());
+    }
+
+    @Test
+    public void onlyOrderedAndSequencedFramesCarryAnOrderIndex(){
+        for(int reliability = EncapsulatedPacket.UNRELIABLE; reliability <= EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT; ++reliability){
+            boolean ordered = (reliability == EncapsulatedPacket.UNRELIABLE_SEQUENCED) || (reliability == EncapsulatedPacket.RELIABLE_ORDERED)
+                    || (reliability == EncapsulatedPacket.RELIABLE_SEQUENCED) || (reliability == EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT);
+            assertEquals(ordered, EncapsulatedPacket.hasOrderIndex(reliability));
+        }
+        EncapsulatedPacket packet = EncapsulatedPacketTest.newPacket(EncapsulatedPacket.RELIABLE_WITH_ACK_RECEIPT);
+        packet.setOrderIndex(null);
+        packet.setOrderChannel(null);
+        EncapsulatedPacket decoded = new EncapsulatedPacket(ByteBuffer.wrap(packet.toBinary()));
+        assertEquals(Integer.valueOf(0x010203), decoded.getMessageIndex());
+        assertNull(decoded.getOrderIndex());
+        assertArrayEquals(new byte[]{(byte) 0x8f, 1, 2}, decoded.getBuffer());
+    }
+}
@@ -0,0 +1,196 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.PacketHandler;
+import com.supermarcus.jraklib.Session;
+import com.supermarcus.jraklib.SessionManager;
+import com.supermarcus.jraklib.lang.ACKNotification;
+import com.supermarcus.jraklib.lang.RawPacket;
+import com.supermarcus.jraklib.network.ReceivedPacket;
+import com.supermarcus.jraklib.network.loopback.LoopbackNetwork;
+import com.supermarcus.jraklib.network.loopback.LoopbackTransport;
+import com.supermarcus.jraklib.protocol.raklib.CLIENT_CONNECT_DataPacket;
+import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
+import com.supermarcus.jraklib.protocol.raklib.OPEN_CONNECTION_REQUEST_1;
+import com.supermarcus.jraklib.protocol.raklib.OPEN_CONNECTION_REQUEST_2;
+import com.supermarcus.jraklib.protocol.raklib.PacketInfo;
+import com.supermarcus.jraklib.protocol.raklib.data.DATA_PACKET_4;
+import org.junit.After;
+import org.junit.Before;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Connects a raw client to a server session on a loopback network, the frames it sends are checked on the server
+ *
+ * Frames built with {@link #frame(int, int, int)} carry their number, the server records the numbers it delivers
+ */
+public abstract class LoopbackChannelTest {
+    protected static final byte MARKER = (byte) 0x8f;
+
+    protected static final InetSocketAddress SERVER = new InetSocketAddress("127.0.0.1", 19132);
+
+    protected SessionManager manager;
+
+    protected LoopbackTransport client;
+
+    private int seqNumber = 0;
+
+    private int messageIndex = 0;
+
+    volatile protected Session session = null;
+
+    protected final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void connect() throws Exception{
+        this.manager = new SessionManager();
+        LoopbackNetwork network = new LoopbackNetwork();
+        this.manager.setTransportFactory(network);
+        this.manager.setPacketHandler(new PacketHandler() {
+            public void onRawPacket(RawPacket packet){}
+
+            public void onACKNotification(ACKNotification notification){}
+
+            public void onEncapsulated(Session session, EncapsulatedPacket packet, int flags){
+                LoopbackChannelTest.this.session = session;
+                byte[] buffer = packet.getBuffer();
+                if((buffer.length >= 3) && (buffer[0] == LoopbackChannelTest.MARKER)){
+                    LoopbackChannelTest.this.received.add(((buffer[1] & 0xff) << 8) | (buffer[2] & 0xff));
+                }
+            }
+        });
+        this.manager.addInterface(LoopbackChannelTest.SERVER);
+        this.client = network.bind();
+
+        OPEN_CONNECTION_REQUEST_1 request1 = new OPEN_CONNECTION_REQUEST_1();
+        request1.setMtuSize(1400);
+        request1.encode();
+        this.client.writePacket(request1.toBinary(), LoopbackChannelTest.SERVER);
+        this.awaitReply(datagram -> datagram[0] == PacketInfo.OPEN_CONNECTION_REPLY_1.getNetworkId());
+        OPEN_CONNECTION_REQUEST_2 request2 = new OPEN_CONNECTION_REQUEST_2();
+        request2.setMtuSize(1400);
+        request2.setClientID(7);
+        request2.setServerAddress(LoopbackChannelTest.SERVER);
+        request2.encode();
+        this.client.writePacket(request2.toBinary(), LoopbackChannelTest.SERVER);
+        this.awaitReply(datagram -> datagram[0] == PacketInfo.OPEN_CONNECTION_REPLY_2.getNetworkId());
+        CLIENT_CONNECT_DataPacket connect = new CLIENT_CONNECT_DataPacket();
+        connect.setClientID(7);
+        connect.setSendPing(1);
+        connect.encode();
+        this.send(LoopbackChannelTest.unreliable(connect.toBinary()));
+        this.awaitReply(LoopbackChannelTest::isServerHandshake);
+        ByteBuffer handshake = ByteBuffer.allocate(256);
+        handshake.put((byte) 0x13);
+        for(int i = 0; i < 11; ++i){
+            handshake.put((byte) 4);
+            for(byte b : this.client.getLocalSocketAddress().getAddress().getAddress()){
+                handshake.put((byte) ~b);
+            }
+            handshake.putShort((short) 1);
+        }
+        handshake.putLong(1).putLong(2);
+        this.send(LoopbackChannelTest.unreliable(Arrays.copyOf(handshake.array(), handshake.position())));
+        this.send(LoopbackChannelTest.unreliable(new byte[]{(byte) 0x8e}));//Handled after the handshake, the server takes datagrams in order
+        LoopbackChannelTest.waitFor(() -> this.session != null);
+    }
+
+    @After
+    public void shutdown(){
+        this.manager.shutdown();
+    }
+
+    private static boolean isServerHandshake(byte[] datagram){
+        if(((datagram[0] & 0xf0) != 0x80) || (datagram.length <= 4)){//Data packets with a frame
+            return false;
+        }
+        EncapsulatedPacket frame = new EncapsulatedPacket(ByteBuffer.wrap(datagram, 4, datagram.length - 4));
+        return frame.getBuffer()[0] == PacketInfo.SERVER_HANDSHAKE_DataPacket.getNetworkId();
+    }
+
+    /**
+     * Read what the server sent to the client until a datagram matches
+     *
+     * @param reply Test of the datagram waited for
+     */
+    private void awaitReply(Predicate<byte[]> reply) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline){
+            ReceivedPacket packet = this.client.readPacket();
+            if(packet == null){
+                Thread.sleep(1);
+                continue;
+            }
+            try{
+                if(reply.test(packet.getRawData())){
+                    return;
+                }
+            }finally{
+                packet.release();
+            }
+        }
+        fail("the server did not reply");
+    }
+
+    protected static EncapsulatedPacket unreliable(byte[] buffer){
+        EncapsulatedPacket packet = new EncapsulatedPacket();
+        packet.setReliability(EncapsulatedPacket.UNRELIABLE);
+        packet.setBuffer(buffer);
+        return packet;
+    }
+
+    /**
+     * @param reliability Ordered or sequenced reliability
+     * @param channel Order channel
+     * @param orderIndex Order index, also the number the frame carries
+     * @return Frame with the next message index if the reliability has one
+     */
+    protected EncapsulatedPacket frame(int reliability, int channel, int orderIndex){
+        EncapsulatedPacket packet = new EncapsulatedPacket();
+        packet.setReliability(reliability);
+        if(reliability != EncapsulatedPacket.UNRELIABLE_SEQUENCED){
+            packet.setMessageIndex(this.messageIndex++);
+        }
+        packet.setOrderChannel(channel);
+        packet.setOrderIndex(orderIndex);
+        packet.setBuffer(new byte[]{LoopbackChannelTest.MARKER, (byte) (orderIndex >> 8), (byte) orderIndex});
+        return packet;
+    }
+
+    /**
+     * Send frames in one datagram
+     */
+    protected void send(EncapsulatedPacket... packets){
+        DATA_PACKET_4 datagram = new DATA_PACKET_4();
+        datagram.setSeqNumber(this.seqNumber++);
+        for(EncapsulatedPacket packet : packets){
+            datagram.addPacket(packet);
+        }
+        datagram.encode();
+        this.client.writePacket(datagram.toBinary(), LoopbackChannelTest.SERVER);
+    }
+
+    protected static void waitFor(BooleanSupplier condition) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean() && (System.currentTimeMillis() < deadline)){
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    protected void assertDeliveredInOrder(int count) throws InterruptedException{
+        LoopbackChannelTest.waitFor(() -> this.received.size() >= count);
+        for(int i = 0; i < count; ++i){
+            assertEquals(Integer.valueOf(i), this.received.get(i));
+        }
+    }
+}
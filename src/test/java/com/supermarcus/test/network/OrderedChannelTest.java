@@ -0,0 +1,46 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.network.ReliableManager;
+import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the ordered channels of a server session with a raw client on a loopback network
+ */
+public class OrderedChannelTest extends LoopbackChannelTest {
+    @Test
+    public void frameTooFarAheadIsTakenWhenSentAgain() throws Exception{
+        int window = ReliableManager.WINDOW_SIZE;
+        EncapsulatedPacket[] frames = new EncapsulatedPacket[window];
+        for(int i = 0; i < window; ++i){
+            frames[i] = this.frame(EncapsulatedPacket.RELIABLE_ORDERED, 0, i);
+        }
+        EncapsulatedPacket ahead = this.frame(EncapsulatedPacket.RELIABLE_ORDERED, 0, window);
+        this.send(ahead);//Arrives before the whole window of frames it has to wait for
+        ReliableManager reliable = this.session.getReliableManager();
+        OrderedChannelTest.waitFor(() -> reliable.getRefusedDatagrams() == 1);
+        for(EncapsulatedPacket frame : frames){
+            this.send(frame);
+        }
+        this.assertDeliveredInOrder(window);
+        this.send(ahead);//Resent in a new datagram, the first one was never acknowledged
+        this.assertDeliveredInOrder(window + 1);
+        assertEquals(1, reliable.getRefusedDatagrams());
+    }
+
+    @Test
+    public void framesWithAckReceiptAreOrderedToo() throws Exception{
+        EncapsulatedPacket[] frames = new EncapsulatedPacket[3];
+        for(int i = 0; i < frames.length; ++i){
+            frames[i] = this.frame(EncapsulatedPacket.RELIABLE_ORDERED_WITH_ACK_RECEIPT, 0, i);
+        }
+        this.send(frames[2]);
+        this.send(frames[1]);
+        OrderedChannelTest.waitFor(() -> this.session.getReliableManager().getOrderHoldBack(0) == 2);
+        assertTrue(this.received.isEmpty());
+        this.send(frames[0]);
+        this.assertDeliveredInOrder(frames.length);
+    }
+}
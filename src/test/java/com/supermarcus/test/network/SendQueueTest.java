@@ -0,0 +1,54 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.network.QueuePacket;
+import com.supermarcus.jraklib.network.SendPriority;
+import com.supermarcus.jraklib.network.SendQueue;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class SendQueueTest {
+    private static QueuePacket packet(int id, SendPriority priority){
+        return new QueuePacket(new DatagramPacket(new byte[]{(byte) id}, 1), priority);
+    }
+
+    @Test
+    public void drainsHigherPriorityFirstAndFifoWithinPriority(){
+        SendQueue queue = new SendQueue(16);
+        queue.offer(SendQueueTest.packet(1, SendPriority.NORMAL), () -> {});
+        queue.offer(SendQueueTest.packet(2, SendPriority.NORMAL), () -> {});
+        queue.offer(SendQueueTest.packet(3, SendPriority.IMMEDIATE), () -> {});
+        queue.offer(SendQueueTest.packet(4, SendPriority.IMMEDIATE), () -> {});
+        ArrayList<Integer> sent = new ArrayList<>();
+        assertTrue(queue.drain(packet -> sent.add((int) packet.getPacket().getData()[0])));
+        assertEquals("[3, 4, 1, 2]", sent.toString());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void fullRingFlushesBeforeDropping(){
+        final SendQueue queue = new SendQueue(2);
+        final ArrayList<Integer> sent = new ArrayList<>();
+        Runnable flusher = () -> queue.drain(packet -> sent.add((int) packet.getPacket().getData()[0]));
+        for(int i = 0; i < 5; ++i){
+            assertTrue(queue.offer(SendQueueTest.packet(i, SendPriority.NORMAL), flusher));
+        }
+        assertEquals(2, queue.getBackpressureCount());
+        assertEquals(0, queue.getDroppedPackets());
+        flusher.run();
+        assertEquals("[0, 1, 2, 3, 4]", sent.toString());
+    }
+
+    @Test
+    public void packetIsDroppedWhenFlushDoesNotMakeRoom(){
+        SendQueue queue = new SendQueue(2);
+        assertTrue(queue.offer(SendQueueTest.packet(0, SendPriority.NORMAL), () -> {}));
+        assertTrue(queue.offer(SendQueueTest.packet(1, SendPriority.NORMAL), () -> {}));
+        assertFalse(queue.offer(SendQueueTest.packet(2, SendPriority.NORMAL), () -> {}));
+        assertEquals(1, queue.getDroppedPackets());
+        assertEquals(2, queue.size());
+    }
+}
@@ -0,0 +1,133 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.lang.Triad;
+import com.supermarcus.jraklib.network.SequenceWindow;
+import com.supermarcus.jraklib.protocol.raklib.acknowledge.ACK;
+import com.supermarcus.jraklib.protocol.raklib.acknowledge.AcknowledgePacket;
+import com.supermarcus.jraklib.protocol.raklib.acknowledge.NACK;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SequenceWindowTest {
+    private static void assertRanges(AcknowledgePacket packet, int... bounds){
+        assertEquals(bounds.length / 2, packet.getRangeCount());
+        for(int i = 0; i < packet.getRangeCount(); ++i){
+            assertEquals(bounds[i * 2], packet.getRangeStart(i));
+            assertEquals(bounds[i * 2 + 1], packet.getRangeEnd(i));
+        }
+    }
+
+    @Test
+    public void sizeIsRoundedUpToPowerOfTwo(){
+        assertEquals(64, new SequenceWindow(1).getSize());
+        assertEquals(128, new SequenceWindow(100).getSize());
+        assertEquals(128, new SequenceWindow(128).getSize());
+        assertEquals(Triad.MAX_WINDOW, new SequenceWindow(Integer.MAX_VALUE).getSize());
+    }
+
+    @Test
+    public void windowAtTheCapRefusesPastItsEnd(){
+        SequenceWindow window = new SequenceWindow(Triad.MAX_WINDOW);
+        assertFalse(window.receive(Triad.MAX_WINDOW));
+        assertTrue(window.receive(Triad.MAX_WINDOW - 1));
+        window.flush(new ACK(), new NACK());
+        assertEquals(Triad.MAX_WINDOW / 2, window.getStart());
+        assertTrue(window.receive(Triad.MAX_WINDOW + (Triad.MAX_WINDOW / 2) - 1));
+        assertFalse(window.receive(Triad.MAX_WINDOW + (Triad.MAX_WINDOW / 2)));
+    }
+
+    @Test
+    public void datagramsAreTakenOnceInsideTheWindow(){
+        SequenceWindow window = new SequenceWindow(64);
+        assertTrue(window.receive(0));
+        assertFalse(window.receive(0));
+        assertTrue(window.isReceived(0));
+        assertFalse(window.receive(64));
+        assertFalse(window.receive(Triad.MASK));
+        assertTrue(window.receive(63));
+        assertEquals(64, window.getNext());
+    }
+
+    @Test
+    public void flushWritesRangesOfReceivedAndSkippedDatagrams(){
+        SequenceWindow window = new SequenceWindow(64);
+        for(int seq : new int[]{0, 1, 2, 5, 6, 9}){
+            assertTrue(window.receive(seq));
+        }
+        assertTrue(window.hasPendingAcks());
+        assertTrue(window.hasPendingNacks());
+        ACK ack = new ACK();
+        NACK nack = new NACK();
+        window.flush(ack, nack);
+        SequenceWindowTest.assertRanges(ack, 0, 2, 5, 6, 9, 9);
+        SequenceWindowTest.assertRanges(nack, 3, 4, 7, 8);
+        assertFalse(window.hasPendingAcks());
+        assertFalse(window.hasPendingNacks());
+
+        ack = new ACK();
+        nack = new NACK();
+        window.flush(ack, nack);
+        assertEquals(0, ack.getRangeCount());
+        assertEquals(0, nack.getRangeCount());
+    }
+
+    @Test
+    public void lateDatagramIsNoLongerNacked(){
+        SequenceWindow window = new SequenceWindow(64);
+        window.receive(0);
+        window.receive(2);
+        window.receive(1);
+        assertFalse(window.hasPendingNacks());
+        ACK ack = new ACK();
+        NACK nack = new NACK();
+        window.flush(ack, nack);
+        SequenceWindowTest.assertRanges(ack, 0, 2);
+        assertEquals(0, nack.getRangeCount());
+    }
+
+    @Test
+    public void flushKeepsHalfAWindowBehindTheHighestDatagram(){
+        SequenceWindow window = new SequenceWindow(64);
+        for(int seq = 0; seq < 64; ++seq){
+            window.receive(seq);
+        }
+        window.flush(new ACK(), new NACK());
+        assertEquals(32, window.getStart());
+        assertFalse(window.receive(31));
+        assertFalse(window.isReceived(31));
+        assertFalse(window.receive(40));
+        assertTrue(window.isReceived(40));
+        assertTrue(window.receive(95));
+        assertFalse(window.receive(96));
+    }
+
+    @Test
+    public void sequenceNumbersWrapAround(){
+        SequenceWindow window = new SequenceWindow(Triad.MAX_WINDOW);
+        int half = window.getSize() / 2;
+        for(int seq = 0; seq < (Triad.MASK - half); seq += half){
+            assertTrue(window.receive(seq));
+            window.flush(new ACK(), new NACK());
+        }
+        assertTrue(window.receive(Triad.MASK - half));
+        window.flush(new ACK(), new NACK());
+        assertTrue(window.receive(Triad.MASK - 1));
+        window.flush(new ACK(), new NACK());
+
+        assertTrue(window.receive(Triad.MASK));
+        assertTrue(window.receive(0));
+        assertTrue(window.receive(2));
+        assertEquals(3, window.getNext());
+        assertFalse(window.receive(Triad.MASK));
+        ACK ack = new ACK();
+        NACK nack = new NACK();
+        window.flush(ack, nack);
+        SequenceWindowTest.assertRanges(ack, Triad.MASK, Triad.MASK, 0, 0, 2, 2);
+        SequenceWindowTest.assertRanges(nack, 1, 1);
+
+        assertTrue(window.receive(1));
+        assertTrue(window.isReceived(Triad.MASK));
+        assertEquals((3 - half) & Triad.MASK, window.getStart());
+    }
+}
@@ -0,0 +1,109 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.Session;
+import com.supermarcus.jraklib.network.ReliableManager;
+import com.supermarcus.jraklib.network.SendPriority;
+import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the sequenced channels of a server session with a raw client on a loopback network
+ */
+public class SequencedChannelTest extends LoopbackChannelTest {
+    private int messageIndex = 1000;//Clear of the indexes the whole frames take
+
+    private Session sender;
+
+    /**
+     * @return The two fragments of a reliable sequenced frame, the first one holds the number
+     */
+    private EncapsulatedPacket[] fragments(int channel, int orderIndex, int splitID){
+        EncapsulatedPacket[] fragments = new EncapsulatedPacket[2];
+        for(int i = 0; i < fragments.length; ++i){
+            EncapsulatedPacket packet = new EncapsulatedPacket();
+            packet.setReliability(EncapsulatedPacket.RELIABLE_SEQUENCED);
+            packet.setMessageIndex(this.messageIndex++);
+            packet.setOrderChannel(channel);
+            packet.setOrderIndex(orderIndex);
+            packet.setSplit(true);
+            packet.setSplitID((short) splitID);
+            packet.setSplitCount(fragments.length);
+            packet.setSplitIndex(i);
+            packet.setBuffer((i == 0) ? new byte[]{LoopbackChannelTest.MARKER, (byte) (orderIndex >> 8), (byte) orderIndex} : new byte[]{0, 0, 0});
+            fragments[i] = packet;
+        }
+        return fragments;
+    }
+
+    @Test
+    public void framesOlderThanTheNewestAreDropped() throws Exception{
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 0));
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 2));
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 1));
+        this.send(this.frame(EncapsulatedPacket.UNRELIABLE_SEQUENCED, 0, 2));
+        this.send(this.frame(EncapsulatedPacket.UNRELIABLE_SEQUENCED, 0, 3));
+        ReliableManager reliable = this.session.getReliableManager();
+        SequencedChannelTest.waitFor(() -> (this.received.size() >= 3) && (reliable.getStaleSequencedFrames() == 2));
+        assertEquals(Arrays.asList(0, 2, 3), this.received);
+    }
+
+    @Test
+    public void channelsAreSequencedApart() throws Exception{
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 5));
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 1, 1));
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 1, 0));
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 6));
+        SequencedChannelTest.waitFor(() -> this.received.size() >= 3);
+        assertEquals(Arrays.asList(5, 1, 6), this.received);
+        assertEquals(1, this.session.getReliableManager().getStaleSequencedFrames());
+    }
+
+    @Test
+    public void splitFrameIsSequencedOnceItIsPutTogether() throws Exception{
+        EncapsulatedPacket[] late = this.fragments(0, 7, 1);
+        this.send(late[0]);
+        this.send(this.frame(EncapsulatedPacket.RELIABLE_SEQUENCED, 0, 8));//Newer than the split frame, which is not complete yet
+        this.send(late[1]);
+        EncapsulatedPacket[] newer = this.fragments(0, 9, 2);
+        this.send(newer[1]);
+        this.send(newer[0]);
+        ReliableManager reliable = this.session.getReliableManager();
+        SequencedChannelTest.waitFor(() -> (this.received.size() >= 2) && (reliable.getStaleSequencedFrames() == 1));
+        assertEquals(Arrays.asList(8, 9), this.received);
+    }
+
+    @Test
+    public void everyChannelNumbersItsSequencedFrames(){
+        this.sender = new Session(this.manager, new InetSocketAddress("127.0.0.1", 19133), null);//Not bound to an interface, only the test thread uses it
+        this.sender.setMtuSize(1400);
+        ReliableManager reliable = this.sender.getReliableManager();
+        int[][] sent = {{0, 0}, {0, 1}, {1, 0}, {0, 2}, {1, 1}};
+        for(int[] frame : sent){
+            EncapsulatedPacket packet = new EncapsulatedPacket();
+            packet.setReliability((frame[1] % 2 == 0) ? EncapsulatedPacket.RELIABLE_SEQUENCED : EncapsulatedPacket.UNRELIABLE_SEQUENCED);
+            packet.setOrderChannel(frame[0]);
+            packet.setBuffer(new byte[]{LoopbackChannelTest.MARKER, 0, 0});
+            reliable.addEncapsulatedToQueue(packet, SendPriority.NORMAL);
+            assertEquals(Integer.valueOf(frame[1]), packet.getOrderIndex());
+        }
+
+        EncapsulatedPacket ordered = new EncapsulatedPacket();
+        ordered.setReliability(EncapsulatedPacket.RELIABLE_ORDERED);
+        ordered.setOrderChannel(0);
+        ordered.setBuffer(new byte[]{LoopbackChannelTest.MARKER, 0, 0});
+        reliable.addEncapsulatedToQueue(ordered, SendPriority.NORMAL);
+        assertEquals(Integer.valueOf(0), ordered.getOrderIndex());//Order indexes are counted apart from sequence indexes
+
+        EncapsulatedPacket noChannel = new EncapsulatedPacket();
+        noChannel.setReliability(EncapsulatedPacket.UNRELIABLE_SEQUENCED);
+        noChannel.setBuffer(new byte[]{LoopbackChannelTest.MARKER, 0, 0});
+        reliable.addEncapsulatedToQueue(noChannel, SendPriority.NORMAL);
+        assertEquals(Integer.valueOf(0), noChannel.getOrderChannel());
+        assertEquals(Integer.valueOf(3), noChannel.getOrderIndex());
+    }
+}
@@ -0,0 +1,40 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.SessionManager;
+import com.supermarcus.jraklib.network.RakLibInterface;
+import com.supermarcus.jraklib.network.loopback.LoopbackNetwork;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+import static org.junit.Assert.*;
+
+public class ShardRollbackTest {
+    private static final InetSocketAddress SERVER = new InetSocketAddress("127.0.0.1", 19132);
+
+    private SessionManager manager = new SessionManager();
+
+    @After
+    public void shutdown(){
+        this.manager.shutdown();
+    }
+
+    @Test
+    public void shardsAreRolledBackWhenOneFailsToBind() throws Exception{
+        LoopbackNetwork network = new LoopbackNetwork();//Has no SO_REUSEPORT, the second shard cannot bind
+        this.manager.setTransportFactory(network);
+        try{
+            this.manager.addInterface(ShardRollbackTest.SERVER, 2);
+            fail();
+        }catch (SocketException expected){}
+        assertEquals(0, this.manager.getInterfaces().length);
+        assertNull(this.manager.getInterface(0));
+        assertNull(network.getEndpoint(ShardRollbackTest.SERVER));
+
+        RakLibInterface server = this.manager.addInterface(ShardRollbackTest.SERVER);
+        assertEquals(0, server.getServerId());
+        assertEquals(1, this.manager.getInterfaces().length);
+    }
+}
@@ -0,0 +1,115 @@
+package com.supermarcus.test.network;
+
+import com.supermarcus.jraklib.Session;
+import com.supermarcus.jraklib.SessionManager;
+import com.supermarcus.jraklib.network.ReliableManager;
+import com.supermarcus.jraklib.protocol.raklib.EncapsulatedPacket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+
+/**
+ * Split packet limits of a session which is not bound to an interface, so the test thread is the only one using it
+ */
+public class SplitPacketTest {
+    private SessionManager manager;
+
+    private Session session;
+
+    private ReliableManager reliable;
+
+    @Before
+    public void createSession(){
+        this.manager = new SessionManager();
+        this.session = new Session(this.manager, new InetSocketAddress("127.0.0.1", 19133), null);//Held here, the reliable manager only keeps a weak reference
+        this.session.setMtuSize(1400);
+        this.reliable = this.session.getReliableManager();
+    }
+
+    @After
+    public void shutdown(){
+        this.manager.shutdown();
+    }
+
+    private static EncapsulatedPacket fragment(int splitID, int count, int index, int length){
+        EncapsulatedPacket packet = new EncapsulatedPacket();
+        packet.setReliability(EncapsulatedPacket.RELIABLE);
+        packet.setSplit(true);
+        packet.setSplitID((short) splitID);
+        packet.setSplitCount(count);
+        packet.setSplitIndex(index);
+        byte[] buffer = new byte[length];
+        buffer[0] = (byte) 0xfe;
+        packet.setBuffer(buffer);
+        return packet;
+    }
+
+    @Test
+    public void completePacketIsNoLongerPending(){
+        this.reliable.onSplit(SplitPacketTest.fragment(1, 2, 1, 10));
+        assertEquals(1, this.reliable.getPendingSplits());
+        assertEquals(10, this.reliable.getPendingSplitBytes());
+        this.reliable.onSplit(SplitPacketTest.fragment(1, 2, 0, 100));
+        assertEquals(0, this.reliable.getPendingSplits());
+        assertEquals(0, this.reliable.getPendingSplitBytes());
+        assertEquals(0, this.reliable.getDroppedSplits());
+    }
+
+    @Test
+    public void malformedFragmentsAreRefused(){
+        this.reliable.onSplit(SplitPacketTest.fragment(1, ReliableManager.MAX_SPLIT_COUNT + 1, 0, 10));
+        this.reliable.onSplit(SplitPacketTest.fragment(2, 4, 4, 10));
+        this.reliable.onSplit(SplitPacketTest.fragment(3, 4, 0, 1401));
+        assertEquals(0, this.reliable.getPendingSplits());
+
+        this.reliable.onSplit(SplitPacketTest.fragment(4, 4, 0, 100));
+        this.reliable.onSplit(SplitPacketTest.fragment(4, 4, 1, 99));
+        assertEquals(0, this.reliable.getPendingSplits());
+        assertEquals(0, this.reliable.getPendingSplitBytes());
+        assertEquals(1, this.reliable.getDroppedSplits());
+    }
+
+    @Test
+    public void oldestPacketMakesRoomForNewOnes(){
+        for(int id = 0; id <= ReliableManager.MAX_SPLITS; ++id){
+            this.reliable.onSplit(SplitPacketTest.fragment(id, 2, 0, 10));
+        }
+        assertEquals(ReliableManager.MAX_SPLITS, this.reliable.getPendingSplits());
+        assertEquals(1, this.reliable.getDroppedSplits());
+        this.reliable.onSplit(SplitPacketTest.fragment(0, 2, 1, 5));//First fragment of a new packet 0 as the old one was dropped
+        assertEquals(ReliableManager.MAX_SPLITS, this.reliable.getPendingSplits());
+        assertEquals(2, this.reliable.getDroppedSplits());
+    }
+
+    @Test
+    public void pendingBytesAreBounded(){
+        int count = ReliableManager.MAX_SPLIT_COUNT;
+        int packetBytes = count * 1400;
+        int fitting = ReliableManager.MAX_SPLIT_BYTES / packetBytes;
+        for(int id = 0; id <= fitting; ++id){
+            this.reliable.onSplit(SplitPacketTest.fragment(id, count, 0, 1400));
+        }
+        assertEquals(fitting, this.reliable.getPendingSplits());
+        assertEquals((long) fitting * packetBytes, this.reliable.getPendingSplitBytes());
+        assertEquals(1, this.reliable.getDroppedSplits());
+    }
+
+    @Test
+    public void unfinishedPacketsTimeOut(){
+        long start = System.currentTimeMillis();
+        this.reliable.onSplit(SplitPacketTest.fragment(1, 2, 0, 100));
+        long deadline = this.reliable.getNextDeadline(start);
+        assertTrue(deadline <= (System.currentTimeMillis() + ReliableManager.SPLIT_TIMEOUT));
+
+        this.reliable.onUpdate(start + (ReliableManager.SPLIT_TIMEOUT / 2));
+        assertEquals(1, this.reliable.getPendingSplits());
+        this.reliable.onUpdate(System.currentTimeMillis() + ReliableManager.SPLIT_TIMEOUT);
+        assertEquals(0, this.reliable.getPendingSplits());
+        assertEquals(0, this.reliable.getPendingSplitBytes());
+        assertEquals(1, this.reliable.getDroppedSplits());
+    }
+}